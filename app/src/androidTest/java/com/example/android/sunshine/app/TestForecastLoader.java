@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.List;
+
+public class TestForecastLoader extends AndroidTestCase {
+
+    private static final String LOCATION = "test_forecast_loader";
+    private static final long DAY = 1000L * 60 * 60 * 24;
+
+    private long mLocationId;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Test");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+        mLocationId = ContentUris.parseId(locationUri);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationId)});
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mLocationId)});
+        super.tearDown();
+    }
+
+    /*
+        A load after day URIs were notified reads back those days only, and keeps the other
+        days of the last snapshot as they were.  A change without a day reads everything.
+     */
+    public void testMergesNotifiedDays() {
+        for (int day = 0; day < 5; day++) {
+            writeDay(day, 20 + day);
+        }
+        ForecastLoader loader = new ForecastLoader(mContext, LOCATION);
+        ForecastSnapshot first = loader.loadInBackground();
+        assertEquals(5, first.getCount());
+
+        // Two days change, but only one of them is notified
+        writeDay(1, 31);
+        writeDay(3, 33);
+        loader.onWeatherChanged(WeatherEntry.buildWeatherLocationWithDate(LOCATION, mToday + DAY));
+        List<ForecastSnapshot.Day> days = loader.loadInBackground().daysFrom(mToday);
+        assertEquals(5, days.size());
+        assertEquals(first.daysFrom(mToday).get(0), days.get(0));
+        assertEquals("Error: The notified day wasn't read back", 31.0, days.get(1).high);
+        assertEquals("Error: A day that wasn't notified was read back", 23.0, days.get(3).high);
+
+        // A new day is merged in after the others
+        writeDay(5, 25);
+        loader.onWeatherChanged(
+                WeatherEntry.buildWeatherLocationWithDate(LOCATION, mToday + 5 * DAY));
+        days = loader.loadInBackground().daysFrom(mToday);
+        assertEquals(6, days.size());
+        assertEquals(mToday + 5 * DAY, days.get(5).date);
+        assertEquals(23.0, days.get(3).high);
+
+        // As before Jelly Bean, where the platform doesn't pass the URI along
+        loader.onWeatherChanged(null);
+        days = loader.loadInBackground().daysFrom(mToday);
+        assertEquals(6, days.size());
+        assertEquals("Error: A full reload missed a day", 33.0, days.get(3).high);
+    }
+
+    private void writeDay(int day, double high) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        values.put(WeatherEntry.COLUMN_DATE, mToday + day * DAY);
+        values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 10);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{values});
+    }
+}
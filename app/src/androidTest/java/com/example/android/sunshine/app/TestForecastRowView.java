@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Build;
+import android.support.v4.view.ViewCompat;
+import android.test.AndroidTestCase;
+import android.text.StaticLayout;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+
+public class TestForecastRowView extends AndroidTestCase {
+
+    private static final int ROW_WIDTH = 1000;
+
+    /*
+        A left to right row has the icon and the day at its left, the temperatures at its right,
+        and the right to left row is its mirror image, texts aligned to the other side included.
+     */
+    public void testRightToLeftLayout() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            // There are no right to left layouts before Jelly Bean MR1
+            return;
+        }
+        ForecastRowView ltr = layOutRow(ViewCompat.LAYOUT_DIRECTION_LTR);
+        ForecastRowView rtl = layOutRow(ViewCompat.LAYOUT_DIRECTION_RTL);
+
+        View ltrIcon = ltr.getIconView();
+        View rtlIcon = rtl.getIconView();
+        assertTrue("Error: The icon isn't at the start of a left to right row",
+                ltrIcon.getLeft() < ROW_WIDTH / 2);
+        assertEquals("Error: The icon isn't mirrored in a right to left row",
+                ROW_WIDTH - ltrIcon.getRight(), rtlIcon.getLeft());
+
+        for (int slot : new int[]{ForecastRowView.SLOT_DATE, ForecastRowView.SLOT_DESCRIPTION,
+                ForecastRowView.SLOT_HIGH, ForecastRowView.SLOT_LOW}) {
+            StaticLayout ltrText = ltr.getLayout(slot);
+            StaticLayout rtlText = rtl.getLayout(slot);
+            assertEquals("Error: Text " + slot + " isn't mirrored in a right to left row",
+                    ROW_WIDTH - ltr.getTextLeft(slot) - ltrText.getWidth(),
+                    rtl.getTextLeft(slot));
+            // Measured from the edge the text is aligned to
+            assertEquals("Error: Text " + slot + " isn't aligned to the mirrored side",
+                    ltrText.getLineLeft(0), rtlText.getWidth() - rtlText.getLineRight(0), 1f);
+        }
+
+        assertTrue("Error: The high isn't after the day in a right to left row",
+                rtl.getTextLeft(ForecastRowView.SLOT_HIGH)
+                        < rtl.getTextLeft(ForecastRowView.SLOT_DATE));
+    }
+
+    private ForecastRowView layOutRow(int layoutDirection) {
+        ForecastRowView row = (ForecastRowView) LayoutInflater.from(
+                new ContextThemeWrapper(mContext, R.style.AppTheme))
+                .inflate(R.layout.list_item_forecast, null);
+        ViewCompat.setLayoutDirection(row, layoutDirection);
+        // Digits and Latin letters, so that only the row's direction differs
+        row.setForecast("Tomorrow", "Clear", "21°", "8°");
+        row.measure(View.MeasureSpec.makeMeasureSpec(ROW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        row.layout(0, 0, ROW_WIDTH, row.getMeasuredHeight());
+        return row;
+    }
+}
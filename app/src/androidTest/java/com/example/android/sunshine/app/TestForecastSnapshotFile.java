@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestForecastSnapshotFile extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final long DAY = 1000 * 60 * 60 * 24;
+    private static final long TODAY = 1419033600000L;
+
+    private List<ForecastSnapshot.Day> createDays() {
+        ArrayList<ForecastSnapshot.Day> days = new ArrayList<>();
+        days.add(new ForecastSnapshot.Day(1, TODAY - DAY, 800, "Clear", 21.5, 8.25));
+        days.add(new ForecastSnapshot.Day(2, TODAY, 500, "Rain", -0.5, -12));
+        days.add(new ForecastSnapshot.Day(3, TODAY + DAY, 600, null, 0, 0));
+        // Longer than a short length could hold
+        char[] longDescription = new char[40000];
+        Arrays.fill(longDescription, 'é');
+        days.add(new ForecastSnapshot.Day(4, TODAY + 2 * DAY, 701, new String(longDescription),
+                3, 2));
+        return days;
+    }
+
+    private static List<ForecastSnapshot.Day> decode(byte[] bytes, String location) {
+        return ForecastSnapshotFile.decode(ByteBuffer.wrap(bytes), location, TODAY);
+    }
+
+    /*
+        The days read back are the days written from today on, and a missing description comes
+        back empty.
+     */
+    public void testRoundTrip() {
+        List<ForecastSnapshot.Day> days = createDays();
+        List<ForecastSnapshot.Day> decoded =
+                decode(ForecastSnapshotFile.encode(LOCATION, days), LOCATION);
+        assertNotNull("Error: The snapshot couldn't be read back", decoded);
+        assertEquals("Error: The days before today should be left out", 3, decoded.size());
+        assertEquals(days.get(1), decoded.get(0));
+        assertEquals("", decoded.get(1).description);
+        assertEquals(days.get(3), decoded.get(2));
+
+        assertNull("Error: The snapshot of another location was read",
+                decode(ForecastSnapshotFile.encode(LOCATION, days), "94043"));
+        assertNull("Error: A snapshot of past days only should read as none",
+                decode(ForecastSnapshotFile.encode(LOCATION, days.subList(0, 1)), LOCATION));
+    }
+
+    /*
+        Every prefix of a snapshot is rejected without an exception.
+     */
+    public void testTruncated() {
+        byte[] bytes = ForecastSnapshotFile.encode(LOCATION, createDays().subList(0, 3));
+        for (int length = 0; length < bytes.length; length++) {
+            assertNull("Error: A snapshot cut at " + length + " bytes was read",
+                    decode(Arrays.copyOf(bytes, length), LOCATION));
+        }
+        assertNull("Error: A snapshot with bytes after the last day was read",
+                decode(Arrays.copyOf(bytes, bytes.length + 1), LOCATION));
+    }
+
+    public void testCorrupt() {
+        byte[] bytes = ForecastSnapshotFile.encode(LOCATION, createDays().subList(0, 3));
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] ^= 1;
+        assertNull("Error: A snapshot with a bad magic was read", decode(badMagic, LOCATION));
+
+        byte[] badVersion = bytes.clone();
+        badVersion[7] ^= 1;
+        assertNull("Error: A snapshot with another version was read",
+                decode(badVersion, LOCATION));
+
+        // The location's length, then the day count right after the location
+        int countOffset = 4 + 4 + 4 + LOCATION.length();
+        for (int badLength : new int[]{-1, Integer.MAX_VALUE, bytes.length}) {
+            byte[] badLocation = bytes.clone();
+            ByteBuffer.wrap(badLocation).putInt(8, badLength);
+            assertNull("Error: A location length of " + badLength + " was read",
+                    decode(badLocation, LOCATION));
+        }
+        for (int badCount : new int[]{-1, 4, Integer.MAX_VALUE}) {
+            byte[] badDays = bytes.clone();
+            ByteBuffer.wrap(badDays).putInt(countOffset, badCount);
+            assertNull("Error: A day count of " + badCount + " was read",
+                    decode(badDays, LOCATION));
+        }
+
+        // The description length of the first day
+        int descriptionOffset = countOffset + 4 + 8 + 8 + 4 + 8 + 8;
+        for (int badLength : new int[]{-1, Integer.MAX_VALUE}) {
+            byte[] badDescription = bytes.clone();
+            ByteBuffer.wrap(badDescription).putInt(descriptionOffset, badLength);
+            assertNull("Error: A description length of " + badLength + " was read",
+                    decode(badDescription, LOCATION));
+        }
+    }
+
+    /*
+        A broken file is ignored by read() as well.
+     */
+    public void testReadCorruptFile() throws IOException {
+        File file = new File(mContext.getCacheDir(), ForecastSnapshotFile.FILE_NAME);
+        byte[] bytes = ForecastSnapshotFile.encode(LOCATION, createDays().subList(0, 3));
+        try {
+            writeFile(file, bytes);
+            List<ForecastSnapshot.Day> days = ForecastSnapshotFile.read(mContext, LOCATION, TODAY);
+            assertNotNull("Error: The snapshot file couldn't be read", days);
+            assertEquals(2, days.size());
+
+            writeFile(file, Arrays.copyOf(bytes, bytes.length / 2));
+            assertNull("Error: A truncated snapshot file was read",
+                    ForecastSnapshotFile.read(mContext, LOCATION, TODAY));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    // A little past both ends of the three digit ids
+    static private final int FIRST_ID = -10;
+    static private final int LAST_ID = 1010;
+    static private final int BENCHMARK_ROUNDS = 200;
+
+    /*
+        Every id must map to what the if/else chains the registry replaced returned.
+     */
+    public void testMatchesLegacyChains() {
+        WeatherConditions conditions = WeatherConditions.get(mContext);
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Error: Wrong icon for " + id,
+                    legacyIconResource(id), WeatherConditions.getIconResource(id));
+            assertEquals("Error: Wrong art for " + id,
+                    legacyArtResource(id), WeatherConditions.getArtResource(id));
+            assertEquals("Error: Wrong image URL for " + id,
+                    legacyImageUrl(id), WeatherConditions.getImageUrl(id));
+            assertEquals("Error: Wrong art URL for " + id,
+                    legacyArtUrl(mContext, id), conditions.getArtUrl(id));
+            assertEquals("Error: Wrong label for " + id,
+                    legacyLabel(mContext, id), conditions.getLabel(id));
+        }
+    }
+
+    public void testArtPackRegistration() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_art_pack_key);
+        String saved = prefs.getString(key, null);
+        // Starts listening, the settings are then updated on the main thread
+        SunshineSettings.get(mContext);
+        try {
+            prefs.edit().putString(key, "test_pack").commit();
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return "test_pack".equals(SunshineSettings.get(mContext).artPack);
+                }
+            }.run();
+            WeatherConditions.registerArtPack("test_pack", new WeatherConditions.ArtPack() {
+                @Override
+                public String getArtUrl(String artName) {
+                    return "test://" + artName;
+                }
+            });
+            assertEquals("Error: The registered art pack wasn't used",
+                    "test://light_rain", WeatherConditions.get(mContext).getArtUrl(300));
+            assertNull("Error: An unknown id has no art",
+                    WeatherConditions.get(mContext).getArtUrl(100));
+        } finally {
+            WeatherConditions.unregisterArtPack("test_pack");
+            prefs.edit().putString(key, saved).commit();
+        }
+    }
+
+    /*
+        Art that was downloaded must be loaded from its file once the pack was listed, the rest
+        from the pack's URLs, and listing new art must have the weather shown again.
+     */
+    public void testPinnedArtPack() throws IOException {
+        final File packDir = ArtPackManager.getPackDir(mContext, "test_pinned_pack");
+        File clear = new File(packDir, "clear");
+        final boolean[] presentationChanged = new boolean[1];
+        SunshineSettings.PresentationObserver observer =
+                new SunshineSettings.PresentationObserver() {
+                    @Override
+                    public void onPresentationChanged() {
+                        presentationChanged[0] = true;
+                    }
+                };
+        WeatherConditions.ArtPack artPack = new WeatherConditions.ArtPack() {
+            @Override
+            public String getArtUrl(String artName) {
+                return "test://" + artName;
+            }
+        };
+        SunshineSettings.registerPresentationObserver(mContext, observer);
+        try {
+            assertTrue(packDir.isDirectory() || packDir.mkdirs());
+            assertTrue(clear.isFile() || clear.createNewFile());
+            ArtPackManager.listPinnedArt(mContext, packDir);
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return presentationChanged[0];
+                }
+            }.run();
+
+            WeatherConditions.ArtPack pinned =
+                    ArtPackManager.pin(mContext, "test_pinned_pack", artPack);
+            assertEquals("Error: Downloaded art wasn't loaded from its file",
+                    Uri.fromFile(clear).toString(), pinned.getArtUrl("clear"));
+            assertEquals("Error: Missing art wasn't loaded from the pack",
+                    "test://rain", pinned.getArtUrl("rain"));
+
+            // Only a listing of the files tells the URLs apart
+            assertTrue(clear.delete());
+            assertEquals(Uri.fromFile(clear).toString(),
+                    ArtPackManager.pin(mContext, "test_pinned_pack", artPack)
+                            .getArtUrl("clear"));
+            ArtPackManager.listPinnedArt(mContext, packDir);
+            assertEquals("Error: Deleted art was still loaded from its file",
+                    "test://clear", ArtPackManager.pin(mContext, "test_pinned_pack", artPack)
+                            .getArtUrl("clear"));
+        } finally {
+            SunshineSettings.unregisterPresentationObserver(observer);
+            clear.delete();
+            packDir.delete();
+        }
+    }
+
+    /*
+        Times the lookups of a list bind (icon, art, art URL and label) over every id, for the
+        registry and for the chains.  The numbers are logged rather than asserted, they depend
+        on the device.
+     */
+    public void testLookupBenchmark() {
+        // Warm up both, so that neither pays for class loading or the first build
+        timeLegacyLookups(1);
+        timeRegistryLookups(1);
+
+        long legacyNanos = timeLegacyLookups(BENCHMARK_ROUNDS);
+        long registryNanos = timeRegistryLookups(BENCHMARK_ROUNDS);
+        long lookups = (long) BENCHMARK_ROUNDS * (LAST_ID - FIRST_ID + 1);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Condition lookup benchmark: chains %.1fns, registry %.1fns per id",
+                (double) legacyNanos / lookups, (double) registryNanos / lookups));
+    }
+
+    private long timeLegacyLookups(int rounds) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int id = FIRST_ID; id <= LAST_ID; id++) {
+                sink += legacyIconResource(id) + legacyArtResource(id);
+                sink += legacyArtUrl(mContext, id) == null ? 0 : 1;
+                sink += legacyLabel(mContext, id).length();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        assertTrue(sink != 0);
+        return nanos;
+    }
+
+    private long timeRegistryLookups(int rounds) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int id = FIRST_ID; id <= LAST_ID; id++) {
+                WeatherConditions conditions = WeatherConditions.get(mContext);
+                sink += WeatherConditions.getIconResource(id)
+                        + WeatherConditions.getArtResource(id);
+                sink += conditions.getArtUrl(id) == null ? 0 : 1;
+                sink += conditions.getLabel(id).length();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        assertTrue(sink != 0);
+        return nanos;
+    }
+
+    /*
+        The lookups as they were before the registry, kept to check it against and to time.
+     */
+    private static int legacyIconResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtUrl(Context context, int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static String legacyLabel(Context context, int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500:
+                stringId = R.string.condition_500;
+                break;
+            case 501:
+                stringId = R.string.condition_501;
+                break;
+            case 502:
+                stringId = R.string.condition_502;
+                break;
+            case 503:
+                stringId = R.string.condition_503;
+                break;
+            case 504:
+                stringId = R.string.condition_504;
+                break;
+            case 511:
+                stringId = R.string.condition_511;
+                break;
+            case 520:
+                stringId = R.string.condition_520;
+                break;
+            case 531:
+                stringId = R.string.condition_531;
+                break;
+            case 600:
+                stringId = R.string.condition_600;
+                break;
+            case 601:
+                stringId = R.string.condition_601;
+                break;
+            case 602:
+                stringId = R.string.condition_602;
+                break;
+            case 611:
+                stringId = R.string.condition_611;
+                break;
+            case 612:
+                stringId = R.string.condition_612;
+                break;
+            case 615:
+                stringId = R.string.condition_615;
+                break;
+            case 616:
+                stringId = R.string.condition_616;
+                break;
+            case 620:
+                stringId = R.string.condition_620;
+                break;
+            case 621:
+                stringId = R.string.condition_621;
+                break;
+            case 622:
+                stringId = R.string.condition_622;
+                break;
+            case 701:
+                stringId = R.string.condition_701;
+                break;
+            case 711:
+                stringId = R.string.condition_711;
+                break;
+            case 721:
+                stringId = R.string.condition_721;
+                break;
+            case 731:
+                stringId = R.string.condition_731;
+                break;
+            case 741:
+                stringId = R.string.condition_741;
+                break;
+            case 751:
+                stringId = R.string.condition_751;
+                break;
+            case 761:
+                stringId = R.string.condition_761;
+                break;
+            case 762:
+                stringId = R.string.condition_762;
+                break;
+            case 771:
+                stringId = R.string.condition_771;
+                break;
+            case 781:
+                stringId = R.string.condition_781;
+                break;
+            case 800:
+                stringId = R.string.condition_800;
+                break;
+            case 801:
+                stringId = R.string.condition_801;
+                break;
+            case 802:
+                stringId = R.string.condition_802;
+                break;
+            case 803:
+                stringId = R.string.condition_803;
+                break;
+            case 804:
+                stringId = R.string.condition_804;
+                break;
+            case 900:
+                stringId = R.string.condition_900;
+                break;
+            case 901:
+                stringId = R.string.condition_901;
+                break;
+            case 902:
+                stringId = R.string.condition_902;
+                break;
+            case 903:
+                stringId = R.string.condition_903;
+                break;
+            case 904:
+                stringId = R.string.condition_904;
+                break;
+            case 905:
+                stringId = R.string.condition_905;
+                break;
+            case 906:
+                stringId = R.string.condition_906;
+                break;
+            case 951:
+                stringId = R.string.condition_951;
+                break;
+            case 952:
+                stringId = R.string.condition_952;
+                break;
+            case 953:
+                stringId = R.string.condition_953;
+                break;
+            case 954:
+                stringId = R.string.condition_954;
+                break;
+            case 955:
+                stringId = R.string.condition_955;
+                break;
+            case 956:
+                stringId = R.string.condition_956;
+                break;
+            case 957:
+                stringId = R.string.condition_957;
+                break;
+            case 958:
+                stringId = R.string.condition_958;
+                break;
+            case 959:
+                stringId = R.string.condition_959;
+                break;
+            case 960:
+                stringId = R.string.condition_960;
+                break;
+            case 961:
+                stringId = R.string.condition_961;
+                break;
+            case 962:
+                stringId = R.string.condition_962;
+                break;
+            default:
+                return context.getString(R.string.condition_unknown, weatherId);
+        }
+        return context.getString(stringId);
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
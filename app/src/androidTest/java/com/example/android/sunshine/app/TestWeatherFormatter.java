@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+public class TestWeatherFormatter extends AndroidTestCase {
+
+    // Halves of both signs, around zero and at the ends of the tables
+    private static final double[] TEMPERATURES = {
+            -0.4, -0.5, -0.6, 0.4, 0.5, 0.6, 1.5, 2.5, -1.5, -2.5, 21.5, -17.5, 99.5, 149.5,
+            150.5, -99.5, -100.5, -0.0, 0.0, -1e-9, 1e-9, 0.49999999999999994, 1000, -1000,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+    };
+    private static final float[] WIND_SPEEDS = {
+            0, -0f, 0.4f, 0.5f, 1.5f, 2.5f, -0.4f, -0.5f, 249.5f, 250.5f, 1000,
+            Float.NaN, Float.POSITIVE_INFINITY,
+    };
+
+    /*
+        Every temperature must read as the String.format of R.string.format_temperature the
+        tables replaced, in both units.
+     */
+    public void testTemperaturesMatchLegacyFormat() {
+        for (boolean metric : new boolean[]{true, false}) {
+            WeatherFormatter formatter =
+                    new WeatherFormatter(mContext, metric, Locale.getDefault());
+            // Tenths and twentieths, which land on halves in Celsius and near them in Fahrenheit
+            for (int i = -2400; i <= 3200; i++) {
+                validateTemperature(formatter, metric, i / 20.0);
+            }
+            // The Celsius values that are whole and half degrees in Fahrenheit
+            for (int i = -300; i <= 600; i++) {
+                validateTemperature(formatter, metric, (i / 2.0 - 32) / 1.8);
+            }
+            for (double temperature : TEMPERATURES) {
+                validateTemperature(formatter, metric, temperature);
+            }
+        }
+    }
+
+    /*
+        Every wind must read as the String.format and the if/else chain the tables replaced.
+     */
+    public void testWindsMatchLegacyFormat() {
+        for (boolean metric : new boolean[]{true, false}) {
+            WeatherFormatter formatter =
+                    new WeatherFormatter(mContext, metric, Locale.getDefault());
+            for (int i = -40; i <= 1200; i++) {
+                float windSpeed = i / 4f;
+                validateWind(formatter, metric, windSpeed, i * 0.5f);
+            }
+            for (float windSpeed : WIND_SPEEDS) {
+                validateWind(formatter, metric, windSpeed, 90);
+            }
+            // Every boundary of the compass directions, and the floats on either side of it
+            for (int i = -1; i <= 9; i++) {
+                float boundary = 22.5f + 45 * i;
+                for (float degrees : new float[]{boundary, Math.nextUp(boundary),
+                        Math.nextAfter(boundary, Double.NEGATIVE_INFINITY)}) {
+                    validateWind(formatter, metric, 10, degrees);
+                }
+            }
+            validateWind(formatter, metric, 10, Float.NaN);
+        }
+    }
+
+    private void validateTemperature(WeatherFormatter formatter, boolean metric,
+            double temperature) {
+        assertEquals("Error: Wrong temperature for " + temperature + (metric ? " C" : " F"),
+                legacyTemperature(mContext, metric, temperature),
+                formatter.formatTemperature(temperature));
+    }
+
+    private void validateWind(WeatherFormatter formatter, boolean metric, float windSpeed,
+            float degrees) {
+        assertEquals("Error: Wrong wind for " + windSpeed + " at " + degrees
+                        + (metric ? " km/h" : " mph"),
+                legacyWind(mContext, metric, windSpeed, degrees),
+                formatter.formatWind(windSpeed, degrees));
+    }
+
+    private static String legacyTemperature(Context context, boolean metric, double temperature) {
+        if (!metric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    private static String legacyWind(Context context, boolean metric, float windSpeed,
+            float degrees) {
+        int windFormat;
+        if (metric) {
+            windFormat = R.string.format_wind_kmh;
+        } else {
+            windFormat = R.string.format_wind_mph;
+            windSpeed = .621371192237334f * windSpeed;
+        }
+
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return String.format(context.getString(windFormat), windSpeed, direction);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.test.AndroidTestCase;
+
+public class TestWeatherIconAtlas extends AndroidTestCase {
+
+    /*
+        The cells of the strips the build generates must be the drawables WeatherIconAtlas
+        expects them to be, in its order.
+     */
+    public void testCellsMatchDrawables() {
+        validateStrip("icon", R.drawable.weather_icon_atlas, WeatherIconAtlas.ICONS);
+        validateStrip("art", R.drawable.weather_art_atlas, WeatherIconAtlas.ART);
+        // The counts the build generates from the same lists, which the watch face draws with
+        Resources resources = mContext.getResources();
+        assertEquals(WeatherIconAtlas.ICONS.length,
+                resources.getInteger(R.integer.weather_icon_atlas_cells));
+        assertEquals(WeatherIconAtlas.ART.length,
+                resources.getInteger(R.integer.weather_art_atlas_cells));
+    }
+
+    public void testGetDrawable() {
+        WeatherIconAtlas atlas = WeatherIconAtlas.get(mContext);
+        for (int resourceId : WeatherIconAtlas.ICONS) {
+            Drawable drawable = atlas.getDrawable(resourceId);
+            Drawable expected = mContext.getResources().getDrawable(resourceId);
+            assertNotNull("Error: The atlas has no drawable for an icon", drawable);
+            assertEquals(expected.getIntrinsicWidth(), drawable.getIntrinsicWidth());
+            assertEquals(expected.getIntrinsicHeight(), drawable.getIntrinsicHeight());
+        }
+        assertNull("Error: The atlas has a drawable for the logo",
+                atlas.getDrawable(R.drawable.ic_logo));
+        assertEquals(-1, WeatherIconAtlas.getArtCell(R.drawable.ic_clear));
+        assertEquals(WeatherIconAtlas.ART.length - 1,
+                WeatherIconAtlas.getArtCell(R.drawable.art_clouds));
+    }
+
+    // Both decoded without scaling, from the same density as the device picks for both
+    private void validateStrip(String name, int stripId, int[] cellIds) {
+        Resources resources = mContext.getResources();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        Bitmap strip = BitmapFactory.decodeResource(resources, stripId, options);
+        for (int cell = 0; cell < cellIds.length; cell++) {
+            Bitmap expected = BitmapFactory.decodeResource(resources, cellIds[cell], options);
+            int size = expected.getWidth();
+            assertEquals("Error: The " + name + " strip has cells of the wrong size",
+                    size * cellIds.length, strip.getWidth());
+            int[] expectedPixels = new int[size * size];
+            int[] cellPixels = new int[size * size];
+            expected.getPixels(expectedPixels, 0, size, 0, 0, size, size);
+            strip.getPixels(cellPixels, 0, size, cell * size, 0, size, size);
+            for (int i = 0; i < expectedPixels.length; i++) {
+                assertEquals("Error: Cell " + cell + " of the " + name + " strip isn't "
+                        + resources.getResourceEntryName(cellIds[cell]),
+                        expectedPixels[i], cellPixels[i]);
+            }
+            expected.recycle();
+        }
+        strip.recycle();
+    }
+}
@@ -17,9 +17,15 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
+import android.util.Log;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.HashSet;
 
 public class TestDb extends AndroidTestCase {
@@ -55,6 +61,7 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.CurrentEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -234,4 +241,228 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    // The statement the provider runs for a forecast read: location setting plus a date range
+    private static final String WEATHER_RANGE_QUERY = "SELECT * FROM " +
+            WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+            WeatherContract.LocationEntry.TABLE_NAME + " ON " +
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+            " = " + WeatherContract.LocationEntry.TABLE_NAME + "." + WeatherContract.LocationEntry._ID +
+            " WHERE " + WeatherContract.LocationEntry.TABLE_NAME + "." +
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+            WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?";
+
+    /*
+        Makes sure that a forecast read is a search of the weather table by (location_id, date),
+        whichever physical layout the database was created with, and never a full table scan.
+     */
+    public void testWeatherRangeQueryPlan() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        String plan = explainQueryPlan(db, WEATHER_RANGE_QUERY,
+                TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE));
+
+        // Newer SQLite versions leave out the word TABLE from the plan
+        assertFalse("Error: The forecast read scans the whole weather table: " + plan,
+                plan.contains("SCAN TABLE " + WeatherContract.WeatherEntry.TABLE_NAME) ||
+                        plan.contains("SCAN " + WeatherContract.WeatherEntry.TABLE_NAME));
+        if (dbHelper.usesClusteredLayout()) {
+            assertTrue("Error: The forecast read doesn't use the clustered primary key: " + plan,
+                    plan.contains("USING PRIMARY KEY (" +
+                            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + "=? AND " +
+                            WeatherContract.WeatherEntry.COLUMN_DATE + ">?)"));
+        } else {
+            assertTrue("Error: The forecast read doesn't use the location/date index: " + plan,
+                    plan.contains(WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+        }
+        dbHelper.close();
+    }
+
+    /*
+        Makes sure that the statistics are aggregated from the (location_id, date) key alone: the
+        rows of the clustered table, or the covering index of the rowid table.
+     */
+    public void testStatsQueryPlan() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        String sql = WeatherStats.buildQuery(WeatherContract.StatsEntry.PERIOD_MONTH, null,
+                WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?", null);
+        String plan = explainQueryPlan(db, sql, "1", Long.toString(TestUtilities.TEST_DATE));
+
+        assertFalse("Error: The statistics scan the whole weather table: " + plan,
+                plan.contains("SCAN TABLE " + WeatherContract.WeatherEntry.TABLE_NAME) ||
+                        plan.contains("SCAN " + WeatherContract.WeatherEntry.TABLE_NAME));
+        if (dbHelper.usesClusteredLayout()) {
+            assertTrue("Error: The statistics don't use the clustered primary key: " + plan,
+                    plan.contains("USING PRIMARY KEY"));
+        } else {
+            assertTrue("Error: The statistics aren't computed from the covering index: " + plan,
+                    plan.contains("USING COVERING INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX));
+        }
+        dbHelper.close();
+    }
+
+    /*
+        Compares the two weather table layouts on a history built the way the sync adapter builds
+        it: one location's days at a time, several locations interleaved.  In the rowid layout the
+        rows of a location end up spread over the whole table, in the clustered layout they are
+        contiguous, so the range scan reads fewer pages.
+
+        The pages are counted as the bytes the scans read from the database files.  The databases
+        are on disk with a page cache too small to hold a location's rows between two scans, so
+        every scan reads the pages it needs, and only those.
+     */
+    public void testClusteredRangeScanBenchmark() {
+        mContext.deleteDatabase(BENCHMARK_ROWID_DB);
+        mContext.deleteDatabase(BENCHMARK_CLUSTERED_DB);
+        SQLiteDatabase rowidDb = mContext.openOrCreateDatabase(BENCHMARK_ROWID_DB, 0, null);
+        if (!WeatherDbHelper.supportsClusteredLayout(rowidDb)) {
+            Log.i(LOG_TAG, "SQLite is too old for WITHOUT ROWID tables, skipping benchmark");
+            rowidDb.close();
+            mContext.deleteDatabase(BENCHMARK_ROWID_DB);
+            return;
+        }
+        SQLiteDatabase clusteredDb = mContext.openOrCreateDatabase(BENCHMARK_CLUSTERED_DB, 0, null);
+        try {
+            fillBenchmarkDatabase(rowidDb, false);
+            fillBenchmarkDatabase(clusteredDb, true);
+            assertTrue(WeatherDbHelper.isClusteredLayout(clusteredDb));
+            assertFalse(WeatherDbHelper.isClusteredLayout(rowidDb));
+
+            long[] rowidScans = measureRangeScans(rowidDb);
+            long[] clusteredScans = measureRangeScans(clusteredDb);
+            Log.i(LOG_TAG, "Range scan benchmark: rowid " + rowidScans[0] + "ms / " +
+                    rowidScans[1] + " pages read, clustered " + clusteredScans[0] + "ms / " +
+                    clusteredScans[1] + " pages read");
+            if (rowidScans[1] < 0 || clusteredScans[1] < 0) {
+                Log.i(LOG_TAG, "The kernel doesn't report the bytes read, skipping page counts");
+                return;
+            }
+            assertTrue("Error: The rowid range scans read no pages, the page cache isn't cold",
+                    rowidScans[1] > 0);
+            assertTrue("Error: The clustered range scans should read fewer pages (" +
+                    clusteredScans[1] + " vs " + rowidScans[1] + ")",
+                    clusteredScans[1] < rowidScans[1]);
+        } finally {
+            rowidDb.close();
+            clusteredDb.close();
+            mContext.deleteDatabase(BENCHMARK_ROWID_DB);
+            mContext.deleteDatabase(BENCHMARK_CLUSTERED_DB);
+        }
+    }
+
+    static private final String BENCHMARK_ROWID_DB = "benchmark_rowid.db";
+    static private final String BENCHMARK_CLUSTERED_DB = "benchmark_clustered.db";
+    static private final int BENCHMARK_LOCATIONS = 20;
+    static private final int BENCHMARK_SYNCS = 50;
+    static private final int BENCHMARK_DAYS = 14;
+    static private final int BENCHMARK_QUERIES = 200;
+
+    private void fillBenchmarkDatabase(SQLiteDatabase db, boolean clustered) {
+        db.execSQL("PRAGMA page_size = 1024");
+        db.execSQL("CREATE TABLE " + WeatherContract.LocationEntry.TABLE_NAME + " (" +
+                WeatherContract.LocationEntry._ID + " INTEGER PRIMARY KEY," +
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+                WeatherContract.LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL);");
+        WeatherDbHelper.createWeatherTable(db, clustered);
+
+        long millisecondsInADay = 1000*60*60*24;
+        db.beginTransaction();
+        try {
+            for (int l = 0; l < BENCHMARK_LOCATIONS; l++) {
+                ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        "location" + l);
+                long locationRowId = db.insert(
+                        WeatherContract.LocationEntry.TABLE_NAME, null, locationValues);
+                assertTrue(locationRowId != -1);
+            }
+            for (int sync = 0; sync < BENCHMARK_SYNCS; sync++) {
+                for (int l = 1; l <= BENCHMARK_LOCATIONS; l++) {
+                    for (int day = 0; day < BENCHMARK_DAYS; day++) {
+                        long date = TestUtilities.TEST_DATE + (sync + day) * millisecondsInADay;
+                        ContentValues weatherValues = TestUtilities.createWeatherValues(l);
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                        if (clustered) {
+                            weatherValues.put(WeatherContract.WeatherEntry._ID,
+                                    WeatherDbHelper.clusteredWeatherId(l, date));
+                        }
+                        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME,
+                                null, weatherValues) != -1);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Returns the milliseconds the scans took and the pages they read, -1 if that's unknown
+    private long[] measureRangeScans(SQLiteDatabase db) {
+        // SQLite's smallest cache, and no memory mapping, so that pages are read from the file
+        db.execSQL("PRAGMA cache_size = 10");
+        Cursor mmap = db.rawQuery("PRAGMA mmap_size = 0", null);
+        mmap.close();
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+
+        long startBytes = readBytes();
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            Cursor cursor = db.rawQuery(WEATHER_RANGE_QUERY, new String[]{
+                    "location" + (i % BENCHMARK_LOCATIONS),
+                    Long.toString(TestUtilities.TEST_DATE)});
+            assertEquals("Error: Range scan returned the wrong number of days",
+                    BENCHMARK_SYNCS + BENCHMARK_DAYS - 1, cursor.getCount());
+            cursor.close();
+        }
+        long millis = SystemClock.elapsedRealtime() - start;
+        long endBytes = readBytes();
+        long pages = startBytes < 0 || endBytes < 0 ? -1 : (endBytes - startBytes) / pageSize;
+        return new long[]{millis, pages};
+    }
+
+    // The bytes this process has read from files so far, -1 if the kernel doesn't say
+    private static long readBytes() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader("/proc/self/io"));
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (line.startsWith("rchar:")) {
+                    return Long.parseLong(line.substring("rchar:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.i(LOG_TAG, "Can't read /proc/self/io: " + e);
+        } finally {
+            if (null != reader) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return -1;
+    }
+
+    static String explainQueryPlan(SQLiteDatabase db, String sql, String... args) {
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailColumn = c.getColumnIndex("detail");
+            while (c.moveToNext()) {
+                plan.append(c.getString(detailColumn)).append('\n');
+            }
+        } finally {
+            c.close();
+        }
+        return plan.toString();
+    }
 }
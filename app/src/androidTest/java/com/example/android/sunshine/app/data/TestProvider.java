@@ -21,13 +21,19 @@ import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.CurrentEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /*
@@ -155,11 +161,35 @@ public class TestProvider extends AndroidTestCase {
         assertEquals("Error: the WeatherEntry CONTENT_URI with location and date should return WeatherEntry.CONTENT_ITEM_TYPE",
                 WeatherEntry.CONTENT_ITEM_TYPE, type);
 
+        long testLocationId = 10L;
+        // content://com.example.android.sunshine.app/location/10/weather
+        type = mContext.getContentResolver().getType(
+                WeatherEntry.buildWeatherLocationId(testLocationId));
+        assertEquals("Error: the WeatherEntry CONTENT_URI with location id should return WeatherEntry.CONTENT_TYPE",
+                WeatherEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/location/10/weather/1419120000
+        type = mContext.getContentResolver().getType(
+                WeatherEntry.buildWeatherLocationIdWithDate(testLocationId, testDate));
+        assertEquals("Error: the WeatherEntry CONTENT_URI with location id and date should return WeatherEntry.CONTENT_ITEM_TYPE",
+                WeatherEntry.CONTENT_ITEM_TYPE, type);
+
         // content://com.example.android.sunshine.app/location/
         type = mContext.getContentResolver().getType(LocationEntry.CONTENT_URI);
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
         assertEquals("Error: the LocationEntry CONTENT_URI should return LocationEntry.CONTENT_TYPE",
                 LocationEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/stats/94074/month
+        type = mContext.getContentResolver().getType(
+                StatsEntry.buildStatsUri(testLocation, StatsEntry.PERIOD_MONTH));
+        assertEquals("Error: the StatsEntry URI should return StatsEntry.CONTENT_TYPE",
+                StatsEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/current/94074
+        type = mContext.getContentResolver().getType(CurrentEntry.buildCurrentUri(testLocation));
+        assertEquals("Error: the CurrentEntry URI should return CurrentEntry.CONTENT_ITEM_TYPE",
+                CurrentEntry.CONTENT_ITEM_TYPE, type);
     }
 
 
@@ -391,6 +421,64 @@ public class TestProvider extends AndroidTestCase {
         );
         TestUtilities.validateCursor("testInsertReadProvider.  Error validating joined Weather and Location data for a specific date.",
                 weatherCursor, weatherValues);
+
+        // Get the weather data by location id, which never needs the join
+        ContentValues weatherOnlyValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherCursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithStartDate(locationRowId, TestUtilities.TEST_DATE),
+                null,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testInsertReadProvider.  Error validating Weather data by location id.",
+                weatherCursor, weatherOnlyValues);
+
+        weatherCursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithDate(locationRowId, TestUtilities.TEST_DATE),
+                null,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testInsertReadProvider.  Error validating Weather data by location id for a specific date.",
+                weatherCursor, weatherOnlyValues);
+
+        // A location setting query without any location columns in the projection is answered
+        // from the weather table alone, and must return the same data
+        String[] weatherOnlyProjection = weatherOnlyValues.keySet().toArray(new String[0]);
+        assertFalse(WeatherProvider.needsLocationJoin(weatherOnlyProjection));
+        weatherCursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                weatherOnlyProjection,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testInsertReadProvider.  Error validating Weather data for a location setting without the join.",
+                weatherCursor, weatherOnlyValues);
+
+        weatherCursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                weatherOnlyProjection,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testInsertReadProvider.  Error validating Weather data for a location setting and date without the join.",
+                weatherCursor, weatherOnlyValues);
+
+        // An unknown location setting must come back empty, not fail
+        weatherCursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation("unknown location"),
+                weatherOnlyProjection,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Weather returned for an unknown location", 0, weatherCursor.getCount());
+        weatherCursor.close();
     }
 
     // Make sure we can still delete after adding/updating stuff
@@ -512,4 +600,560 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test bulk inserts a forecast and reads it back through date windows, a limit and
+        "after" pages, which are what single-row readers and long histories use.
+     */
+    public void testDateWindowQueries() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        // The provider normalizes the dates, so read back the ones it stored
+        String[] dateProjection = new String[]{WeatherEntry.COLUMN_DATE};
+        Uri weatherUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        Cursor cursor = mContext.getContentResolver().query(weatherUri, dateProjection,
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        long[] dates = new long[BULK_INSERT_RECORDS_TO_INSERT];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            dates[i] = cursor.getLong(0);
+        }
+        cursor.close();
+
+        // Start and end dates are both inclusive
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDateRange(TestUtilities.TEST_LOCATION,
+                        dates[2], dates[5]),
+                dateProjection, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Date range returned the wrong number of rows", 4, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(dates[2], cursor.getLong(0));
+        assertTrue(cursor.moveToLast());
+        assertEquals(dates[5], cursor.getLong(0));
+        cursor.close();
+
+        // A limit without a sort order reads the first rows in date order
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherWithLimit(
+                        WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                                dates[0]), 1),
+                dateProjection, null, null, null);
+        assertEquals("Error: Limit of one returned the wrong number of rows", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(dates[0], cursor.getLong(0));
+        cursor.close();
+
+        // Page through the whole forecast by location id, three rows at a time
+        Uri pageUri = WeatherEntry.buildWeatherWithLimit(
+                WeatherEntry.buildWeatherLocationId(locationRowId), 3);
+        int rows = 0;
+        long lastDate = 0;
+        while (true) {
+            Uri uri = lastDate == 0 ? pageUri : WeatherEntry.buildWeatherAfterDate(pageUri, lastDate);
+            cursor = mContext.getContentResolver().query(uri, dateProjection, null, null, null);
+            if (!cursor.moveToFirst()) {
+                cursor.close();
+                break;
+            }
+            assertTrue("Error: Page was larger than its limit", cursor.getCount() <= 3);
+            do {
+                assertEquals("Error: Pages skipped or repeated a row", dates[rows], cursor.getLong(0));
+                lastDate = cursor.getLong(0);
+                rows++;
+            } while (cursor.moveToNext());
+            cursor.close();
+        }
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, rows);
+    }
+
+    /*
+        This test bulk inserts ten consecutive days and checks the aggregates the provider computes
+        over them, and that a cached result is dropped once the weather of the location changes.
+     */
+    public void testStatsQuery() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        // All the test days fall in the same month
+        Uri monthUri = StatsEntry.buildStatsUri(TestUtilities.TEST_LOCATION, StatsEntry.PERIOD_MONTH);
+        Cursor cursor = mContext.getContentResolver().query(monthUri, null, null, null, null);
+        assertEquals("Error: Ten consecutive days should make up a single month", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                cursor.getInt(cursor.getColumnIndex(StatsEntry.COLUMN_DAY_COUNT)));
+        assertEquals(65 - (BULK_INSERT_RECORDS_TO_INSERT - 1),
+                cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MIN_TEMP)), 0.001);
+        assertEquals(75 + (BULK_INSERT_RECORDS_TO_INSERT - 1),
+                cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MAX_TEMP)), 0.001);
+        // every test day has a mean of (65 - i + 75 + i) / 2
+        assertEquals(70, cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_AVG_TEMP)), 0.001);
+        cursor.close();
+
+        // However the days fall into weeks, the weeks add up to all of them
+        cursor = mContext.getContentResolver().query(
+                StatsEntry.buildStatsUri(TestUtilities.TEST_LOCATION, StatsEntry.PERIOD_WEEK),
+                new String[]{StatsEntry.COLUMN_PERIOD, StatsEntry.COLUMN_DAY_COUNT},
+                null, null, null);
+        int days = 0;
+        long lastPeriod = 0;
+        while (cursor.moveToNext()) {
+            assertTrue("Error: Weeks are not in chronological order", cursor.getLong(0) > lastPeriod);
+            lastPeriod = cursor.getLong(0);
+            days += cursor.getInt(1);
+        }
+        cursor.close();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, days);
+
+        // Add the day after the last one, the cached month must be dropped
+        ContentValues nextDay = createBulkInsertWeatherValues(locationRowId)[0];
+        nextDay.put(WeatherEntry.COLUMN_DATE,
+                TestUtilities.TEST_DATE + BULK_INSERT_RECORDS_TO_INSERT * 1000L * 60 * 60 * 24);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, nextDay);
+
+        cursor = mContext.getContentResolver().query(monthUri, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Stale statistics were returned after an insert",
+                BULK_INSERT_RECORDS_TO_INSERT + 1,
+                cursor.getInt(cursor.getColumnIndex(StatsEntry.COLUMN_DAY_COUNT)));
+        cursor.close();
+    }
+
+    /*
+        This test checks that the current weather follows the forecast: it is the row for today
+        after a bulk insert, and moves on to the next day once today's row is gone.
+     */
+    public void testCurrentWeather() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        // A forecast starting yesterday
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < forecast.length; i++) {
+            forecast[i].put(WeatherEntry.COLUMN_DATE, today + (i - 1) * millisecondsInADay);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        for (ContentValues day : forecast) {
+            // the current weather table has no _id of its own
+            day.remove(WeatherEntry._ID);
+        }
+
+        Uri currentUri = CurrentEntry.buildCurrentUri(TestUtilities.TEST_LOCATION);
+        Cursor cursor = mContext.getContentResolver().query(currentUri, null, null, null, null);
+        assertEquals("Error: There should be exactly one current weather row", 1, cursor.getCount());
+        TestUtilities.validateCursor("testCurrentWeather.  Error validating CurrentEntry.",
+                cursor, forecast[1]);
+
+        // Without today's row the current weather is tomorrow's
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(today)});
+        cursor = mContext.getContentResolver().query(currentUri, null, null, null, null);
+        TestUtilities.validateCursor("testCurrentWeather.  Error validating CurrentEntry " +
+                "after a delete.", cursor, forecast[2]);
+
+        // An unknown location has no current weather
+        cursor = mContext.getContentResolver().query(
+                CurrentEntry.buildCurrentUri("unknown"), null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test checks that a current weather row left behind by the end of the day is not
+        returned, nor rewritten by the query, and that the next weather delete brings it forward.
+     */
+    public void testCurrentWeatherAfterDayEnds() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < forecast.length; i++) {
+            forecast[i].put(WeatherEntry.COLUMN_DATE, today + (i - 1) * millisecondsInADay);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        for (ContentValues day : forecast) {
+            day.remove(WeatherEntry._ID);
+        }
+
+        // As if the row had been written yesterday
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("UPDATE " + CurrentEntry.TABLE_NAME + " SET " + CurrentEntry.COLUMN_DATE +
+                " = ?", new Object[]{today - millisecondsInADay});
+
+        Uri currentUri = CurrentEntry.buildCurrentUri(TestUtilities.TEST_LOCATION);
+        Cursor cursor = mContext.getContentResolver().query(currentUri, null, null, null, null);
+        TestUtilities.validateCursor("testCurrentWeatherAfterDayEnds.  Error validating the " +
+                "current weather of a new day.", cursor, forecast[1]);
+        assertEquals("Error: The query wrote the current weather table",
+                today - millisecondsInADay, DatabaseUtils.longForQuery(db,
+                        "SELECT " + CurrentEntry.COLUMN_DATE + " FROM " + CurrentEntry.TABLE_NAME,
+                        null));
+
+        // The sync deletes the days that went by
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " < ?", new String[]{Long.toString(today)});
+        assertEquals("Error: The weather delete didn't bring the current weather forward",
+                today, DatabaseUtils.longForQuery(db,
+                        "SELECT " + CurrentEntry.COLUMN_DATE + " FROM " + CurrentEntry.TABLE_NAME,
+                        null));
+        dbHelper.close();
+    }
+
+    /*
+        This test checks that the shared projections are answered with their columns at the
+        indices their accessors read, and that the accessors read back what was inserted.
+     */
+    public void testProjections() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        // A forecast starting today
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < forecast.length; i++) {
+            forecast[i].put(WeatherEntry.COLUMN_DATE, today + i * millisecondsInADay);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        Uri weatherUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, today);
+
+        Cursor cursor = mContext.getContentResolver().query(weatherUri,
+                WeatherProjections.Forecast.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        validateProjection("Forecast", WeatherProjections.Forecast.COLUMNS, cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(today, WeatherProjections.Forecast.getDate(cursor));
+        assertEquals(forecast[0].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                WeatherProjections.Forecast.getWeatherId(cursor));
+        assertEquals(forecast[0].getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                WeatherProjections.Forecast.getShortDesc(cursor));
+        assertEquals(forecast[0].getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                WeatherProjections.Forecast.getMinTemp(cursor), 0.001);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(weatherUri,
+                WeatherProjections.Detail.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        validateProjection("Detail", WeatherProjections.Detail.COLUMNS, cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(today, WeatherProjections.Detail.getDate(cursor));
+        assertEquals(forecast[0].getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                WeatherProjections.Detail.getPressure(cursor), 0.001);
+        assertEquals(forecast[0].getAsDouble(WeatherEntry.COLUMN_DEGREES),
+                WeatherProjections.Detail.getDegrees(cursor), 0.001);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                CurrentEntry.buildCurrentUri(TestUtilities.TEST_LOCATION),
+                WeatherProjections.Today.COLUMNS, null, null, null);
+        validateProjection("Today", WeatherProjections.Today.COLUMNS, cursor);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(weatherUri,
+                WeatherProjections.Range.COLUMNS, null, null, null);
+        validateProjection("Range", WeatherProjections.Range.COLUMNS, cursor);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                WeatherProjections.LocationId.COLUMNS,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION}, null);
+        validateProjection("LocationId", WeatherProjections.LocationId.COLUMNS, cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(locationRowId, WeatherProjections.LocationId.getId(cursor));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                WeatherProjections.LocationCoord.COLUMNS, null, null, null);
+        validateProjection("LocationCoord", WeatherProjections.LocationCoord.COLUMNS, cursor);
+        cursor.close();
+
+        Bundle todayBundle = WeatherCalls.getToday(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: No weather returned for today", todayBundle);
+        assertEquals(today, WeatherProjections.Today.getDate(todayBundle));
+        assertEquals(forecast[0].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                WeatherProjections.Today.getMaxTemp(todayBundle), 0.001);
+    }
+
+    // The cursor names its columns without the table prefix some projections qualify them with
+    private static void validateProjection(String name, String[] columns, Cursor cursor) {
+        assertNotNull("Error: No cursor returned for the " + name + " projection", cursor);
+        assertEquals("Error: The " + name + " projection returned extra columns",
+                columns.length, cursor.getColumnCount());
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i].substring(columns[i].lastIndexOf('.') + 1);
+            assertEquals("Error: The " + name + " projection has " + column + " elsewhere",
+                    i, cursor.getColumnIndex(column));
+        }
+    }
+
+    static private final int CALL_BENCHMARK_ITERATIONS = 500;
+
+    /*
+        This test checks that the call() fast path returns the same values as the cursor queries
+        it replaces, that callers can't change the cached results, and that reading today's
+        weather through call() is served from the cache and allocates less than a query.
+     */
+    @SuppressWarnings("deprecation")
+    public void testCallFastPath() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        // A forecast starting today
+        long millisecondsInADay = 1000 * 60 * 60 * 24;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < forecast.length; i++) {
+            forecast[i].put(WeatherEntry.COLUMN_DATE, today + i * millisecondsInADay);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+
+        Bundle todayBundle = WeatherCalls.getToday(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: No weather returned for today", todayBundle);
+        assertEquals(today, todayBundle.getLong(CurrentEntry.COLUMN_DATE));
+        assertEquals(forecast[0].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                todayBundle.getDouble(CurrentEntry.COLUMN_MAX_TEMP), 0.001);
+
+        Bundle range = WeatherCalls.getRange(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, 3);
+        long[] dates = WeatherProjections.Range.getDates(range);
+        assertEquals("Error: The range doesn't have the requested number of days", 3, dates.length);
+        for (int i = 0; i < dates.length; i++) {
+            assertEquals(today + i * millisecondsInADay, dates[i]);
+            assertEquals(forecast[i].getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    WeatherProjections.Range.getMinTemps(range)[i], 0.001);
+        }
+
+        // Changing a returned array must not change what the next caller gets
+        dates[0] = 0;
+        WeatherProjections.Range.getMinTemps(range)[0] = Double.NaN;
+        range = WeatherCalls.getRange(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, 3);
+        assertEquals("Error: A caller changed the cached range",
+                today, WeatherProjections.Range.getDates(range)[0]);
+        assertEquals("Error: A caller changed the cached range",
+                forecast[0].getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                WeatherProjections.Range.getMinTemps(range)[0], 0.001);
+
+        assertNull("Error: An unknown location has weather for today",
+                WeatherCalls.getToday(mContext.getContentResolver(), "unknown"));
+
+        // The cursor path the consumers used to take
+        Uri currentUri = CurrentEntry.buildCurrentUri(TestUtilities.TEST_LOCATION);
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < CALL_BENCHMARK_ITERATIONS; i++) {
+            Cursor cursor = mContext.getContentResolver().query(currentUri,
+                    WeatherProjections.Today.COLUMNS, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            cursor.getInt(1);
+            cursor.getString(2);
+            cursor.getDouble(3);
+            cursor.getDouble(4);
+            cursor.close();
+        }
+        long cursorTime = SystemClock.elapsedRealtime() - start;
+        int cursorAllocations = Debug.getThreadAllocCount();
+
+        int callHits = getCallCacheHits();
+        Debug.resetThreadAllocCount();
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < CALL_BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(WeatherCalls.getToday(mContext.getContentResolver(),
+                    TestUtilities.TEST_LOCATION));
+        }
+        long callTime = SystemClock.elapsedRealtime() - start;
+        int callAllocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        callHits = getCallCacheHits() - callHits;
+
+        Log.i(LOG_TAG, "Today's weather " + CALL_BENCHMARK_ITERATIONS + " times: cursor " +
+                cursorTime + "ms, " + cursorAllocations + " allocations, call " +
+                callTime + "ms, " + callAllocations + " allocations");
+        assertEquals("Error: The calls weren't answered from the provider's cache",
+                CALL_BENCHMARK_ITERATIONS, callHits);
+        assertTrue("Error: The call path should allocate less than the cursor path (" +
+                callAllocations + " vs " + cursorAllocations + ")",
+                callAllocations < cursorAllocations);
+    }
+
+    /*
+        This test checks that a repeated forecast query is served from the provider's cache, that
+        weather written for another location leaves it alone, and that weather written for its
+        own location drops it.
+     */
+    public void testQueryCache() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        Uri weatherUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        Cursor cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        int hits = getQueryCacheHits();
+        cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+        assertEquals("Error: A repeated query wasn't served from the cache",
+                hits + 1, getQueryCacheHits());
+
+        // Weather for somewhere else
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "other");
+        long otherLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, otherLocation));
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(otherLocationRowId));
+
+        hits = getQueryCacheHits();
+        cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        cursor.close();
+        assertEquals("Error: Weather for another location dropped the cached forecast",
+                hits + 1, getQueryCacheHits());
+
+        // One more day for the cached location
+        ContentValues nextDay = createBulkInsertWeatherValues(locationRowId)[0];
+        nextDay.put(WeatherEntry.COLUMN_DATE,
+                TestUtilities.TEST_DATE + BULK_INSERT_RECORDS_TO_INSERT * 1000L * 60 * 60 * 24);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, nextDay);
+
+        hits = getQueryCacheHits();
+        cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        assertEquals("Error: A stale forecast was returned after an insert",
+                BULK_INSERT_RECORDS_TO_INSERT + 1, cursor.getCount());
+        cursor.close();
+        assertEquals(hits, getQueryCacheHits());
+    }
+
+    private int getQueryCacheHits() {
+        Bundle stats = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_GET_CACHE_STATS, null, null);
+        return stats.getInt(WeatherContract.EXTRA_QUERY_CACHE_HITS);
+    }
+
+    private int getCallCacheHits() {
+        Bundle stats = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_GET_CACHE_STATS, null, null);
+        return stats.getInt(WeatherContract.EXTRA_CALL_CACHE_HITS);
+    }
+
+    /*
+        This test checks that a weather insert notifies the observers of its own day and location,
+        and leaves the observers of other days and locations, and of the location table, alone.
+     */
+    public void testScopedNotifications() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        long otherDate = date + 1000L * 60 * 60 * 24;
+
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date),
+                false, dayObserver);
+        TestUtilities.TestContentObserver otherDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, otherDate),
+                false, otherDayObserver);
+        TestUtilities.TestContentObserver otherLocationObserver =
+                TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation("other"), true, otherLocationObserver);
+        // After the notification of the location insert has gone out
+        SystemClock.sleep(2 * ChangeNotifier.BATCH_WINDOW_MS);
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                LocationEntry.CONTENT_URI, true, locationObserver);
+
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        dayObserver.waitForNotificationOrFail();
+        // Notifications are sent in batches, give a wrong one time to arrive
+        SystemClock.sleep(2 * ChangeNotifier.BATCH_WINDOW_MS);
+        assertFalse("Error: The observer of another day was notified",
+                otherDayObserver.mContentChanged);
+        assertFalse("Error: The observer of another location was notified",
+                otherLocationObserver.mContentChanged);
+        assertFalse("Error: The observer of the location table was notified",
+                locationObserver.mContentChanged);
+
+        mContext.getContentResolver().unregisterContentObserver(dayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherLocationObserver);
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+        otherDayObserver.mHT.quit();
+        otherLocationObserver.mHT.quit();
+        locationObserver.mHT.quit();
+    }
+
+    /*
+        This test checks that a sync writing a whole forecast again notifies the days that
+        changed, each on its own, and leaves the days that didn't alone.
+     */
+    public void testBulkInsertNotifiesChangedDays() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] forecast = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        SystemClock.sleep(2 * ChangeNotifier.BATCH_WINDOW_MS);
+
+        long changedDate = forecast[1].getAsLong(WeatherEntry.COLUMN_DATE);
+        long unchangedDate = forecast[2].getAsLong(WeatherEntry.COLUMN_DATE);
+        TestUtilities.TestContentObserver changedObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, changedDate),
+                false, changedObserver);
+        TestUtilities.TestContentObserver unchangedObserver =
+                TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        unchangedDate),
+                false, unchangedObserver);
+
+        forecast = createBulkInsertWeatherValues(locationRowId);
+        forecast[1].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                forecast);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        changedObserver.waitForNotificationOrFail();
+        SystemClock.sleep(2 * ChangeNotifier.BATCH_WINDOW_MS);
+        assertFalse("Error: The observer of a day written as it was was notified",
+                unchangedObserver.mContentChanged);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, changedDate),
+                null, null, null, null);
+        TestUtilities.validateCursor("testBulkInsertNotifiesChangedDays.  Error validating the "
+                + "changed day.", cursor, forecast[1]);
+
+        mContext.getContentResolver().unregisterContentObserver(changedObserver);
+        mContext.getContentResolver().unregisterContentObserver(unchangedObserver);
+        unchangedObserver.mHT.quit();
+    }
 }
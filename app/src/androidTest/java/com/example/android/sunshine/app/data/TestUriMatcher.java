@@ -34,8 +34,16 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    // content://com.example.android.sunshine.app/location/10/weather"
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_DIR = WeatherContract.WeatherEntry.buildWeatherLocationId(TEST_LOCATION_ID);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationIdWithDate(TEST_LOCATION_ID, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/stats/London%2C%20UK/week"
+    private static final Uri TEST_STATS_DIR = WeatherContract.StatsEntry.buildStatsUri(
+            LOCATION_QUERY, WeatherContract.StatsEntry.PERIOD_WEEK);
+    // content://com.example.android.sunshine.app/current/London%2C%20UK"
+    private static final Uri TEST_CURRENT_WITH_LOCATION = WeatherContract.CurrentEntry.buildCurrentUri(LOCATION_QUERY);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -51,7 +59,15 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
         assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER WITH LOCATION ID URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID);
+        assertEquals("Error: The WEATHER WITH LOCATION ID AND DATE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The STATS URI was matched incorrectly.",
+                testMatcher.match(TEST_STATS_DIR), WeatherProvider.STATS);
+        assertEquals("Error: The CURRENT WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_CURRENT_WITH_LOCATION), WeatherProvider.CURRENT_WITH_LOCATION);
     }
 }
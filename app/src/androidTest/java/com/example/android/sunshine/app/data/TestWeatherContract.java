@@ -42,4 +42,20 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testBuildWeatherWindow() {
+        Uri windowUri = WeatherContract.WeatherEntry.buildWeatherAfterDate(
+                WeatherContract.WeatherEntry.buildWeatherWithLimit(
+                        WeatherContract.WeatherEntry.buildWeatherLocation(TEST_WEATHER_LOCATION), 7),
+                TEST_WEATHER_DATE);
+        assertEquals("Error: Weather location lost when adding the window",
+                TEST_WEATHER_LOCATION,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(windowUri));
+        assertEquals("Error: Limit not read back from the Uri",
+                7, WeatherContract.WeatherEntry.getLimitFromUri(windowUri));
+        assertEquals("Error: After date not read back from the Uri",
+                TEST_WEATHER_DATE, WeatherContract.WeatherEntry.getAfterDateFromUri(windowUri));
+        assertEquals("Error: Unset end date should read back as 0",
+                0, WeatherContract.WeatherEntry.getEndDateFromUri(windowUri));
+    }
 }
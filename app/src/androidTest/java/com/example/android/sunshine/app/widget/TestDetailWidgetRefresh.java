@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.test.AndroidTestCase;
+
+public class TestDetailWidgetRefresh extends AndroidTestCase {
+
+    public void testRequeryOnlyWhenDataChanged() {
+        DetailWidgetRemoteViewsService.RefreshReasons reasons =
+                new DetailWidgetRemoteViewsService.RefreshReasons();
+        assertTrue("Error: The first refresh didn't query", reasons.takeRequery(false));
+
+        DetailWidgetRemoteViewsService.RefreshReasons.presentationChanged();
+        assertFalse("Error: A presentation change queried again", reasons.takeRequery(true));
+        DetailWidgetRemoteViewsService.RefreshReasons.presentationChanged();
+        assertTrue("Error: A presentation change without a cursor didn't query",
+                reasons.takeRequery(false));
+
+        DetailWidgetRemoteViewsService.RefreshReasons.dataChanged();
+        assertTrue("Error: A data change didn't query", reasons.takeRequery(true));
+
+        // Neither, e.g. when the widget host asks for the data itself
+        assertTrue("Error: A refresh without a reason didn't query", reasons.takeRequery(true));
+    }
+
+    /*
+        Both broadcasts may arrive before the factory gets to refresh, the data change must not
+        be lost to the presentation change that follows it, nor the other way around.
+     */
+    public void testBothTriggersTogether() {
+        DetailWidgetRemoteViewsService.RefreshReasons reasons =
+                new DetailWidgetRemoteViewsService.RefreshReasons();
+        reasons.takeRequery(false);
+
+        DetailWidgetRemoteViewsService.RefreshReasons.dataChanged();
+        DetailWidgetRemoteViewsService.RefreshReasons.presentationChanged();
+        assertTrue("Error: A data change followed by a presentation change didn't query",
+                reasons.takeRequery(true));
+        // The refresh of the second broadcast has no reason left, and queries like any such
+        assertTrue(reasons.takeRequery(true));
+
+        DetailWidgetRemoteViewsService.RefreshReasons.presentationChanged();
+        DetailWidgetRemoteViewsService.RefreshReasons.dataChanged();
+        assertTrue("Error: A presentation change followed by a data change didn't query",
+                reasons.takeRequery(true));
+
+        // Another factory, e.g. of a second list, sees the same changes
+        DetailWidgetRemoteViewsService.RefreshReasons other =
+                new DetailWidgetRemoteViewsService.RefreshReasons();
+        other.takeRequery(false);
+        DetailWidgetRemoteViewsService.RefreshReasons.presentationChanged();
+        assertFalse(reasons.takeRequery(true));
+        assertFalse(other.takeRequery(true));
+    }
+}
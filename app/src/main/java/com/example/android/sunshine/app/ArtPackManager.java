@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a copy of every image of the preferred art pack on the device, so that the list, the
+ * detail view, the widgets and the notification load the art from a file instead of the
+ * network.
+ *
+ * A pack is a handful of small images.  The sync adapter downloads the whole pack at once, on
+ * an unmetered network, into the app's files rather than its cache, where the system doesn't
+ * evict them.  The copy is checked against the server once a week, with conditional requests
+ * that don't download images that didn't change.  Until an image has been downloaded, its URL
+ * is used as before.
+ *
+ * Which images are there is listed once per process, off the main thread, and again after
+ * every download, so that resolving the art URLs touches no files.
+ */
+public final class ArtPackManager {
+    private static final String LOG_TAG = ArtPackManager.class.getSimpleName();
+
+    private static final String PACKS_DIR = "art_packs";
+    // Touched when all of the images of a pack were checked
+    private static final String VALIDATED_FILE = ".validated";
+    private static final String DOWNLOAD_SUFFIX = ".download";
+
+    static final long REVALIDATE_INTERVAL_MS = 7 * DateUtils.DAY_IN_MILLIS;
+    private static final int TIMEOUT_MS = 15 * 1000;
+
+    // The downloaded images of the pack listed last, null until the first listing is done
+    private static volatile PinnedArt sPinnedArt;
+    // The pack pin() asked for last, which a listing of another pack goes on to list
+    private static volatile File sRequestedPackDir;
+    private static final AtomicBoolean sListing = new AtomicBoolean();
+
+    private ArtPackManager() {
+    }
+
+    /**
+     * Returns an art pack that prefers the downloaded images of the given one.  Until the
+     * images of the pack have been listed, that is the given pack itself, and the art is
+     * shown again once they have.
+     */
+    static WeatherConditions.ArtPack pin(Context context, String artPackKey,
+                                         WeatherConditions.ArtPack artPack) {
+        File packDir = getPackDir(context, artPackKey);
+        PinnedArt pinnedArt = sPinnedArt;
+        if (null == pinnedArt || !pinnedArt.mPackDir.equals(packDir)) {
+            listInBackground(context.getApplicationContext(), packDir);
+            return artPack;
+        }
+        return pinnedArt.mNames.isEmpty() ? artPack : new PinnedArtPack(pinnedArt, artPack);
+    }
+
+    private static void listInBackground(final Context context, File packDir) {
+        sRequestedPackDir = packDir;
+        // A listing that is running lists the requested pack next
+        if (!sListing.compareAndSet(false, true)) {
+            return;
+        }
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        File requested = sRequestedPackDir;
+                        PinnedArt pinnedArt = sPinnedArt;
+                        if (null == pinnedArt || !pinnedArt.mPackDir.equals(requested)) {
+                            listPinnedArt(context, requested);
+                        }
+                    } finally {
+                        sListing.set(false);
+                    }
+                    // Unless a pack was requested after the check, and no one else took it
+                    PinnedArt pinnedArt = sPinnedArt;
+                    if (null != pinnedArt && pinnedArt.mPackDir.equals(sRequestedPackDir)
+                            || !sListing.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /*
+        Lists the images downloaded into the pack's directory.  When they aren't the ones the
+        art URLs were resolved with, those are resolved again and the art is shown again.
+        Touches the disk, so it must not be called on the main thread.
+     */
+    static void listPinnedArt(Context context, File packDir) {
+        Set<String> names = new HashSet<>();
+        String[] fileNames = packDir.list();
+        if (null != fileNames) {
+            for (String fileName : fileNames) {
+                if (!VALIDATED_FILE.equals(fileName) && !fileName.endsWith(DOWNLOAD_SUFFIX)) {
+                    names.add(fileName);
+                }
+            }
+        }
+        PinnedArt previous = sPinnedArt;
+        sPinnedArt = new PinnedArt(packDir, names);
+        // pin() returned the pack itself for another directory
+        Set<String> resolved = null != previous && previous.mPackDir.equals(packDir)
+                ? previous.mNames : Collections.<String>emptySet();
+        if (!resolved.equals(names)) {
+            WeatherConditions.invalidate();
+            SunshineSettings.postPresentationChanged(context);
+        }
+    }
+
+    /**
+     * Downloads the images of the preferred art pack that are missing, or checks the ones
+     * there are when they haven't been checked for a while, and deletes the images of other
+     * packs.  Does the network and disk work on the calling thread, so it must not be called
+     * on the main thread.
+     */
+    public static void prefetch(Context context) {
+        SunshineSettings settings = SunshineSettings.get(context);
+        if (settings.useLocalGraphics) {
+            // The built in pack ships with the app
+            deleteOtherPacks(context, null);
+            return;
+        }
+
+        File packDir = getPackDir(context, settings.artPack);
+        File validated = new File(packDir, VALIDATED_FILE);
+        // lastModified() is 0 if the pack was never downloaded
+        if (System.currentTimeMillis() - validated.lastModified() < REVALIDATE_INTERVAL_MS) {
+            return;
+        }
+        if (!Utility.isUnmeteredNetworkConnected(context)) {
+            return;
+        }
+        if (!packDir.isDirectory() && !packDir.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + packDir);
+            return;
+        }
+        deleteOtherPacks(context, packDir);
+
+        WeatherConditions.ArtPack artPack = WeatherConditions.getArtPack(settings.artPack);
+        boolean complete = true;
+        boolean changed = false;
+        for (String artName : WeatherConditions.getArtNames()) {
+            String artUrl = artPack.getArtUrl(artName);
+            try {
+                changed |= download(artUrl, new File(packDir, artName));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error downloading " + artUrl, e);
+                complete = false;
+            }
+        }
+
+        if (complete) {
+            try {
+                if (!validated.createNewFile()) {
+                    validated.setLastModified(System.currentTimeMillis());
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error marking " + packDir + " as validated", e);
+            }
+        }
+        if (changed) {
+            // The URLs of the images just downloaded are those of the files now
+            listPinnedArt(context, packDir);
+        }
+    }
+
+    /*
+        Downloads an image into the file, unless the file holds the image the server has.
+        Returns whether the file was written.
+     */
+    private static boolean download(String artUrl, File file) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(artUrl).openConnection();
+        try {
+            urlConnection.setConnectTimeout(TIMEOUT_MS);
+            urlConnection.setReadTimeout(TIMEOUT_MS);
+            if (file.isFile()) {
+                urlConnection.setIfModifiedSince(file.lastModified());
+            }
+            int responseCode = urlConnection.getResponseCode();
+            if (HttpURLConnection.HTTP_NOT_MODIFIED == responseCode) {
+                return false;
+            } else if (HttpURLConnection.HTTP_OK != responseCode) {
+                throw new IOException("Response " + responseCode);
+            }
+
+            // Written next to the file and renamed, so that no one ever reads half an image
+            File download = new File(file.getPath() + DOWNLOAD_SUFFIX);
+            InputStream in = urlConnection.getInputStream();
+            try {
+                OutputStream out = new FileOutputStream(download);
+                try {
+                    byte[] buffer = new byte[8 * 1024];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            if (!download.renameTo(file)) {
+                download.delete();
+                throw new IOException("Couldn't rename " + download);
+            }
+            // Later checks ask if the image changed since the server last changed it
+            long lastModified = urlConnection.getLastModified();
+            if (lastModified > 0) {
+                file.setLastModified(lastModified);
+            }
+            return true;
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+
+    private static void deleteOtherPacks(Context context, File keep) {
+        File[] packDirs = new File(context.getFilesDir(), PACKS_DIR).listFiles();
+        if (null == packDirs) {
+            return;
+        }
+        for (File packDir : packDirs) {
+            if (packDir.equals(keep)) {
+                continue;
+            }
+            File[] files = packDir.listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            packDir.delete();
+        }
+    }
+
+    // The art pack preference is a URL format, too long and odd a name for a directory
+    static File getPackDir(Context context, String artPackKey) {
+        return new File(new File(context.getFilesDir(), PACKS_DIR),
+                Integer.toHexString(artPackKey.hashCode()));
+    }
+
+    private static final class PinnedArt {
+        final File mPackDir;
+        final Set<String> mNames;
+
+        PinnedArt(File packDir, Set<String> names) {
+            mPackDir = packDir;
+            mNames = names;
+        }
+    }
+
+    private static final class PinnedArtPack implements WeatherConditions.ArtPack {
+        private final PinnedArt mPinnedArt;
+        private final WeatherConditions.ArtPack mArtPack;
+
+        PinnedArtPack(PinnedArt pinnedArt, WeatherConditions.ArtPack artPack) {
+            mPinnedArt = pinnedArt;
+            mArtPack = artPack;
+        }
+
+        @Override
+        public String getArtUrl(String artName) {
+            return mPinnedArt.mNames.contains(artName)
+                    ? Uri.fromFile(new File(mPinnedArt.mPackDir, artName)).toString()
+                    : mArtPack.getArtUrl(artName);
+        }
+    }
+}
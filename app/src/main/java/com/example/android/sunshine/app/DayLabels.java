@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * The labels of the days around today, e.g. "Today, June 24", "Tomorrow" or "Mon Jun 03".
+ *
+ * The labels of the two weeks a sync fetches are formatted once, keyed by julian day and
+ * style, so looking one up on the bind path allocates nothing.  They are formatted again after
+ * local midnight, and when the locale, time zone or clock changes.  Days outside of the window
+ * are formatted on every call.
+ */
+final class DayLabels {
+
+    // The styles of Utility's day strings
+    static final int FRIENDLY = 0;
+    static final int FRIENDLY_LONG_TODAY = 1;
+    static final int FULL_FRIENDLY = 2;
+    static final int DAY_NAME = 3;
+    static final int MONTH_DAY = 4;
+    private static final int STYLE_COUNT = 5;
+
+    static final int WINDOW_DAYS = 14;
+
+    private static volatile Table sTable;
+    private static BroadcastReceiver sReceiver;
+
+    private DayLabels() {
+    }
+
+    /**
+     * Returns the label of the day of the given date in the given style.
+     */
+    static String get(Context context, long dateInMillis, int style) {
+        Table table = sTable;
+        long now = System.currentTimeMillis();
+        if (null == table || now < table.mStartOfToday || now >= table.mStartOfTomorrow
+                || !table.mLocale.equals(Locale.getDefault())) {
+            table = new Table(context.getApplicationContext());
+            sTable = table;
+            registerReceiver(context);
+        }
+        int julianDay = Time.getJulianDay(dateInMillis, table.mGmtOffSeconds);
+        int index = julianDay - table.mToday;
+        if (index >= 0 && index < WINDOW_DAYS) {
+            return table.mLabels[style][index];
+        }
+        return table.format(style, julianDay);
+    }
+
+    /*
+        Lookups check the table against midnight and the default locale, but not against the
+        time zone, which can't be read without allocating.  These broadcasts drop the table.
+     */
+    private static synchronized void registerReceiver(Context context) {
+        if (null != sReceiver) return;
+        sReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                sTable = null;
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.getApplicationContext().registerReceiver(sReceiver, filter);
+    }
+
+    private static final class Table {
+        final Locale mLocale;
+        final long mGmtOffSeconds;
+        final int mToday;
+        final long mStartOfToday;
+        final long mStartOfTomorrow;
+        final String[][] mLabels = new String[STYLE_COUNT][WINDOW_DAYS];
+
+        private final Context mContext;
+        // Only used while holding the lock of the table
+        private final Time mTime = new Time();
+        private final SimpleDateFormat mDayNameFormat = new SimpleDateFormat("EEEE");
+        private final SimpleDateFormat mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+        private final SimpleDateFormat mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+
+        Table(Context context) {
+            mContext = context;
+            mLocale = Locale.getDefault();
+            mTime.setToNow();
+            mGmtOffSeconds = mTime.gmtoff;
+            mToday = Time.getJulianDay(System.currentTimeMillis(), mGmtOffSeconds);
+            mStartOfToday = mTime.setJulianDay(mToday);
+            mStartOfTomorrow = mTime.setJulianDay(mToday + 1);
+            for (int style = 0; style < STYLE_COUNT; style++) {
+                for (int index = 0; index < WINDOW_DAYS; index++) {
+                    mLabels[style][index] = format(style, mToday + index);
+                }
+            }
+        }
+
+        synchronized String format(int style, int julianDay) {
+            long dateInMillis = mTime.setJulianDay(julianDay);
+            switch (style) {
+                case FRIENDLY_LONG_TODAY:
+                    // For today: "Today, June 8"
+                    if (julianDay == mToday) {
+                        return mContext.getString(R.string.format_full_friendly_date,
+                                mContext.getString(R.string.today),
+                                format(MONTH_DAY, julianDay));
+                    }
+                    return format(FRIENDLY, julianDay);
+                case FRIENDLY:
+                    // For the next 6 days: "Wednesday", for all days after that: "Mon Jun 08"
+                    if (julianDay < mToday + 7) {
+                        return format(DAY_NAME, julianDay);
+                    }
+                    return mShortDateFormat.format(dateInMillis);
+                case FULL_FRIENDLY:
+                    return mContext.getString(R.string.format_full_friendly_date,
+                            format(DAY_NAME, julianDay), format(MONTH_DAY, julianDay));
+                case DAY_NAME:
+                    if (julianDay == mToday) {
+                        return mContext.getString(R.string.today);
+                    } else if (julianDay == mToday + 1) {
+                        return mContext.getString(R.string.tomorrow);
+                    }
+                    return mDayNameFormat.format(dateInMillis);
+                case MONTH_DAY:
+                    return mMonthDayFormat.format(dateInMillis);
+                default:
+                    throw new IllegalArgumentException("Unknown day label style: " + style);
+            }
+        }
+    }
+}
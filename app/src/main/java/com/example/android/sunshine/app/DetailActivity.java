@@ -24,6 +24,9 @@ import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 
 public class DetailActivity extends AppCompatActivity {
 
@@ -49,6 +52,34 @@ public class DetailActivity extends AppCompatActivity {
 
             // Being here means we are in animation mode
             supportPostponeEnterTransition();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // Cleared again by onEnterAnimationComplete
+                FrameStats.setPhase("enter_transition");
+            }
         }
     }
+
+    @Override
+    public void onEnterAnimationComplete() {
+        super.onEnterAnimationComplete();
+        FrameStats.setPhase(null);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        FrameStats.start(this, "detail");
+    }
+
+    @Override
+    protected void onPause() {
+        FrameStats.stop(this);
+        super.onPause();
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        FrameStats.dump(prefix, writer, args);
+    }
 }
\ No newline at end of file
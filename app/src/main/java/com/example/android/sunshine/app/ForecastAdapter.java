@@ -16,10 +16,12 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -27,14 +29,12 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Checkable;
 import android.widget.ImageView;
-import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link ForecastSnapshot} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -44,38 +44,36 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastSnapshot mSnapshot;
+    // Bumped by every swap, so that a diff that finishes after a newer swap is dropped
+    private int mSwapGeneration;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
 
     /**
-     * Cache of the children views for a forecast list item.
+     * Holds the row view of a forecast list item and the icon inside it.
      */
     public class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        public final ForecastRowView mRowView;
         public final ImageView mIconView;
-        public final TextView mDateView;
-        public final TextView mDescriptionView;
-        public final TextView mHighTempView;
-        public final TextView mLowTempView;
 
         public ForecastAdapterViewHolder(View view) {
             super(view);
-            mIconView = (ImageView) view.findViewById(R.id.list_item_icon);
-            mDateView = (TextView) view.findViewById(R.id.list_item_date_textview);
-            mDescriptionView = (TextView) view.findViewById(R.id.list_item_forecast_textview);
-            mHighTempView = (TextView) view.findViewById(R.id.list_item_high_textview);
-            mLowTempView = (TextView) view.findViewById(R.id.list_item_low_textview);
+            mRowView = (ForecastRowView) view;
+            mIconView = mRowView.getIconView();
             view.setOnClickListener(this);
         }
 
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            // A row being removed, or clicked while a diff is pending, has no position
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mSnapshot.getRow(adapterPosition).getDate(), this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +86,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Days are identified by their date, which lets RecyclerView and the ItemChoiceManager
+        // follow a day when the days before it are removed at midnight.  This has to be set
+        // before the ItemChoiceManager registers its observer.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,63 +126,50 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Every string of the row was formatted by the loader, off the main thread
+        ForecastRow row = mSnapshot.getRow(position);
         int defaultImage;
-        boolean useLongToday;
+        String dayText;
+        String rowA11y;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResource;
+                dayText = row.longDayText;
+                rowA11y = row.longRowA11y;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResource;
+                dayText = row.dayText;
+                rowA11y = row.rowA11y;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        if ( null == row.artUrl ) {
+            Drawable icon = WeatherIconAtlas.get(mContext).getDrawable(defaultImage);
+            if (null != icon) {
+                forecastAdapterViewHolder.mIconView.setImageDrawable(icon);
+            } else {
+                forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+            }
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.artUrl)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        // the animator can use this to re-find the original view.  Rows that move without being
+        // rebound keep their name, so it is taken from the date rather than the position.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.getDate());
 
+        // The row draws its texts itself, without a view for each, so it speaks for all of them.
         // For accessibility, we don't want a content description for the icon field
-        // because the information is repeated in the description view and the icon
+        // because the information is repeated in the description and the icon
         // is not individually selectable
-
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
-
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mRowView.setForecast(dayText, row.description, row.highText, row.lowText);
+        forecastAdapterViewHolder.mRowView.setContentDescription(rowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -206,20 +195,116 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mSnapshot.getRow(position).getDate();
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        if ( null == mSnapshot ) return 0;
+        return mSnapshot.getCount();
+    }
+
+    /**
+     * Called once a snapshot passed to {@link #swapSnapshot} is what the adapter shows.  A
+     * snapshot that was replaced by a newer one before that happened is never reported.
+     */
+    public interface OnSnapshotAppliedListener {
+        void onSnapshotApplied(ForecastSnapshot snapshot);
+    }
+
+    public void swapSnapshot(ForecastSnapshot newSnapshot) {
+        swapSnapshot(newSnapshot, null);
+    }
+
+    /**
+     * Shows a new snapshot.  Going from or to an empty list is applied at once.  Otherwise the
+     * old snapshot stays on screen while the difference between the two is worked out on a
+     * background thread, and then only the rows that were added, removed or changed are
+     * updated.  The listener, if any, is called on the main thread once the snapshot is shown,
+     * so positions in it are adapter positions from then on.
+     */
+    public void swapSnapshot(final ForecastSnapshot newSnapshot,
+                             final OnSnapshotAppliedListener listener) {
+        final int generation = ++mSwapGeneration;
+        final ForecastSnapshot oldSnapshot = mSnapshot;
+        if (null == oldSnapshot || null == newSnapshot
+                || 0 == oldSnapshot.getCount() || 0 == newSnapshot.getCount()) {
+            mSnapshot = newSnapshot;
+            notifyDataSetChanged();
+            mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+            if (null != listener) {
+                listener.onSnapshotApplied(newSnapshot);
+            }
+            return;
+        }
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                return DiffUtil.calculateDiff(new SnapshotDiffCallback(oldSnapshot, newSnapshot));
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult diff) {
+                if (generation == mSwapGeneration) {
+                    applySnapshot(newSnapshot, diff);
+                    if (null != listener) {
+                        listener.onSnapshotApplied(newSnapshot);
+                    }
+                }
+            }
+        }.execute();
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    private void applySnapshot(ForecastSnapshot newSnapshot, DiffUtil.DiffResult diff) {
+        ForecastSnapshot oldSnapshot = mSnapshot;
+        mSnapshot = newSnapshot;
+        diff.dispatchUpdatesTo(this);
+        if (mUseTodayLayout && oldSnapshot.getRow(0).getDate() != newSnapshot.getRow(0).getDate()) {
+            // A different day moved to the top, and it needs the today layout
+            notifyItemChanged(0);
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    /*
+        Rows are the same item when they have the same date, and are shown the same way when
+        all their formatted strings are equal.  A change of units or art changes the strings,
+        so it rebinds every row without any help.
+     */
+    private static class SnapshotDiffCallback extends DiffUtil.Callback {
+        private final ForecastSnapshot mOld;
+        private final ForecastSnapshot mNew;
+
+        SnapshotDiffCallback(ForecastSnapshot oldSnapshot, ForecastSnapshot newSnapshot) {
+            mOld = oldSnapshot;
+            mNew = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.getCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.getCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.getRow(oldItemPosition).getDate() == mNew.getRow(newItemPosition).getDate();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.getRow(oldItemPosition).equals(mNew.getRow(newItemPosition));
+        }
+    }
+
+    public ForecastSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProjections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Loads the forecast of a location from today on into a {@link ForecastSnapshot}.
+ *
+ * The first load reads the whole forecast.  After that the loader listens for the day URIs the
+ * provider notifies when it writes weather (weather/[location]/[date]), and only reads back the
+ * days that were written, merging them into the last snapshot.  A notification for the whole
+ * location, or one without a URI on older platforms, reads everything again.  When the units or
+ * the art pack change, the days of the last snapshot are formatted again without a query.
+ *
+ * Every day is formatted into a {@link ForecastRow} here as well, off the main thread.  The
+ * first load shows what the last sync left in {@link ForecastSnapshotFile} before it queries.
+ * Snapshots are immutable, so the list can read them on the main thread without a cursor, and
+ * one that changed nothing is not delivered at all.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastSnapshot> {
+
+    private static final String SORT_ORDER = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private final String mLocationSetting;
+    private final ForecastObserver mObserver = new ForecastObserver();
+    private final SunshineSettings.PresentationObserver mPresentationObserver =
+            new SunshineSettings.PresentationObserver() {
+                @Override
+                public void onPresentationChanged() {
+                    // A load without pending days formats the days of the last snapshot again
+                    onContentChanged();
+                }
+            };
+    private boolean mObserverRegistered;
+
+    // The days written since the last load, and whether something was written that can't be
+    // narrowed down to days.  Both are filled on the main thread and drained by the loading one.
+    private final Object mPendingLock = new Object();
+    private final TreeSet<Long> mPendingDates = new TreeSet<>();
+    private boolean mReloadAll = true;
+
+    // The snapshot of the last load, which the next one merges into.  Loads never run at the
+    // same time, but they do run on different threads.
+    private volatile ForecastSnapshot mLoaded;
+
+    // The snapshot last handed to the callbacks, only touched on the main thread
+    private ForecastSnapshot mDelivered;
+    // Whether that snapshot came from the snapshot file rather than from the database
+    private boolean mDeliveredFromFile;
+    // Whether the next load reads the snapshot file first, only the first one does
+    private volatile boolean mReadSnapshotFile = true;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public ForecastLoader(Context context, String locationSetting) {
+        super(context);
+        mLocationSetting = locationSetting;
+    }
+
+    @Override
+    public ForecastSnapshot loadInBackground() {
+        StartupTrace.beginSection("ForecastLoader.load");
+        try {
+            return load();
+        } finally {
+            StartupTrace.endSection();
+        }
+    }
+
+    private ForecastSnapshot load() {
+        if (mReadSnapshotFile) {
+            mReadSnapshotFile = false;
+            // The rows are bound right after the first delivery, their icons are decoded here
+            WeatherIconAtlas.get(getContext()).preload();
+            deliverSnapshotFile();
+        }
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        boolean reloadAll;
+        Long[] dates;
+        synchronized (mPendingLock) {
+            reloadAll = mReloadAll || null == mLoaded;
+            dates = mPendingDates.toArray(new Long[mPendingDates.size()]);
+            mReloadAll = false;
+            mPendingDates.clear();
+        }
+
+        ForecastSnapshot base = mLoaded;
+        if (null == base) {
+            base = ForecastSnapshot.empty(mLocationSetting);
+        }
+
+        List<ForecastSnapshot.Day> days;
+        if (reloadAll) {
+            days = queryDays(WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    mLocationSetting, today));
+        } else {
+            // Days before today drop out of the list even if nothing was written
+            days = base.daysFrom(today);
+            long firstDate = dates.length > 0 ? Math.max(dates[0], today) : today;
+            long lastDate = dates.length > 0 ? dates[dates.length - 1] : 0;
+            if (firstDate <= lastDate) {
+                // The written days are read back with one query over the window they span, which
+                // replaces every day inside it.
+                List<ForecastSnapshot.Day> window = queryDays(
+                        WeatherContract.WeatherEntry.buildWeatherLocationWithDateRange(
+                                mLocationSetting, firstDate, lastDate));
+                days = merge(days, window, firstDate, lastDate);
+            }
+        }
+
+        // Every row is formatted again, because the day names move on with the date and the
+        // units or art may have changed since the last load
+        ForecastSnapshot snapshot = base.next(formatRows(days));
+        if (!reloadAll && !snapshot.hasChanges()) {
+            // Nothing the list shows changed, so keep the old snapshot and skip the delivery
+            snapshot = base;
+        }
+        mLoaded = snapshot;
+        return snapshot;
+    }
+
+    private List<ForecastRow> formatRows(List<ForecastSnapshot.Day> days) {
+        boolean useLocalGraphics = Utility.usingLocalGraphics(getContext());
+        ArrayList<ForecastRow> rows = new ArrayList<>(days.size());
+        for (ForecastSnapshot.Day day : days) {
+            rows.add(ForecastRow.format(getContext(), day, useLocalGraphics));
+        }
+        return rows;
+    }
+
+    private List<ForecastSnapshot.Day> queryDays(Uri uri) {
+        Cursor cursor = getContext().getContentResolver().query(uri,
+                WeatherProjections.Forecast.COLUMNS,
+                null,
+                null,
+                SORT_ORDER);
+        ArrayList<ForecastSnapshot.Day> days = new ArrayList<>();
+        if (null != cursor) {
+            try {
+                while (cursor.moveToNext()) {
+                    days.add(ForecastSnapshot.Day.fromCursor(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return days;
+    }
+
+    /*
+        Returns the days with everything from firstDate to lastDate replaced by the window.
+     */
+    private static List<ForecastSnapshot.Day> merge(List<ForecastSnapshot.Day> days,
+                                                    List<ForecastSnapshot.Day> window,
+                                                    long firstDate, long lastDate) {
+        ArrayList<ForecastSnapshot.Day> merged = new ArrayList<>(days.size() + window.size());
+        int i = 0;
+        while (i < days.size() && days.get(i).date < firstDate) {
+            merged.add(days.get(i++));
+        }
+        merged.addAll(window);
+        while (i < days.size() && days.get(i).date <= lastDate) {
+            i++;
+        }
+        while (i < days.size()) {
+            merged.add(days.get(i++));
+        }
+        return merged;
+    }
+
+    /*
+        Called on the main thread when the provider notifies a change under the location.  A
+        null uri means the platform did not say what changed.
+     */
+    void onWeatherChanged(Uri uri) {
+        synchronized (mPendingLock) {
+            if (isDayOfLocation(uri)) {
+                mPendingDates.add(WeatherContract.WeatherEntry.getDateFromUri(uri));
+            } else {
+                mReloadAll = true;
+            }
+        }
+        onContentChanged();
+    }
+
+    private boolean isDayOfLocation(Uri uri) {
+        if (null == uri) return false;
+        List<String> segments = uri.getPathSegments();
+        return segments.size() == 3
+                && WeatherContract.PATH_WEATHER.equals(segments.get(0))
+                && mLocationSetting.equals(segments.get(1));
+    }
+
+    @Override
+    public void deliverResult(ForecastSnapshot snapshot) {
+        if (isReset()) {
+            return;
+        }
+        boolean changed = snapshot != mDelivered;
+        mDelivered = snapshot;
+        mDeliveredFromFile = false;
+        if (isStarted() && changed) {
+            super.deliverResult(snapshot);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.buildWeatherLocation(mLocationSetting),
+                    true, mObserver);
+            SunshineSettings.registerPresentationObserver(getContext(), mPresentationObserver);
+            mObserverRegistered = true;
+        }
+        if (null != mDelivered) {
+            super.deliverResult(mDelivered);
+        }
+        if (takeContentChanged() || null == mDelivered || mDeliveredFromFile) {
+            forceLoad();
+        }
+    }
+
+    /*
+        On a cold start the list is first filled from the file the last sync wrote, which takes
+        a fraction of opening the database and querying it.  It is read and formatted on the
+        loading thread, and handed to the main thread while the same load goes on to query.
+        The query's snapshot replaces it, and the list only rebinds the rows that differ.
+     */
+    private void deliverSnapshotFile() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        StartupTrace.beginSection("ForecastSnapshotFile.read");
+        try {
+            List<ForecastSnapshot.Day> days =
+                    ForecastSnapshotFile.read(getContext(), mLocationSetting, today);
+            if (null == days) {
+                return;
+            }
+            final ForecastSnapshot snapshot =
+                    ForecastSnapshot.empty(mLocationSetting).next(formatRows(days));
+            // Posted before the result of this load, so it can't arrive after it
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isReset() || null != mDelivered) {
+                        return;
+                    }
+                    mDelivered = snapshot;
+                    mDeliveredFromFile = true;
+                    StartupTrace.mark("forecast from snapshot file");
+                    if (isStarted()) {
+                        ForecastLoader.super.deliverResult(snapshot);
+                    }
+                }
+            });
+        } finally {
+            StartupTrace.endSection();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            SunshineSettings.unregisterPresentationObserver(mPresentationObserver);
+            mObserverRegistered = false;
+        }
+        mDelivered = null;
+    }
+
+    private final class ForecastObserver extends ContentObserver {
+        ForecastObserver() {
+            super(new Handler());
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        // Only called before Jelly Bean, where the changed uri isn't passed along
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onWeatherChanged(uri);
+        }
+    }
+}
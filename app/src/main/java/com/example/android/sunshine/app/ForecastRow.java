@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+/**
+ * One row of the forecast list, with everything it displays already formatted.  Rows are built
+ * by {@link ForecastLoader} on its background thread, so binding one is only a matter of
+ * setting fields on views.
+ */
+public final class ForecastRow {
+    public final ForecastSnapshot.Day day;
+
+    // The first row of the list uses the long "Today, June 8" form and the large art
+    public final String dayText;
+    public final String longDayText;
+    public final int iconResource;
+    public final int artResource;
+    // Null when the local graphics are used
+    public final String artUrl;
+
+    public final String description;
+    public final String descriptionA11y;
+    public final String highText;
+    public final String highA11y;
+    public final String lowText;
+    public final String lowA11y;
+
+    // Everything the row says, for the variant with the short and the long day name
+    public final String rowA11y;
+    public final String longRowA11y;
+
+    private ForecastRow(ForecastSnapshot.Day day, String dayText, String longDayText,
+                        int iconResource, int artResource, String artUrl,
+                        String description, String descriptionA11y,
+                        String highText, String highA11y, String lowText, String lowA11y) {
+        this.day = day;
+        this.dayText = dayText;
+        this.longDayText = longDayText;
+        this.iconResource = iconResource;
+        this.artResource = artResource;
+        this.artUrl = artUrl;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+        this.rowA11y = describe(dayText, descriptionA11y, highA11y, lowA11y);
+        this.longRowA11y = describe(longDayText, descriptionA11y, highA11y, lowA11y);
+    }
+
+    private static String describe(String... parts) {
+        return TextUtils.join(", ", parts);
+    }
+
+    /**
+     * Formats a day.  The settings are passed in, so that all the rows of a load are formatted
+     * with the same ones.
+     */
+    static ForecastRow format(Context context, ForecastSnapshot.Day day,
+                              boolean useLocalGraphics) {
+        int weatherId = day.weatherId;
+        String description = Utility.getStringForWeatherCondition(context, weatherId);
+        WeatherFormatter formatter = WeatherFormatter.get(context);
+        String highText = formatter.formatTemperature(day.high);
+        String lowText = formatter.formatTemperature(day.low);
+        return new ForecastRow(day,
+                Utility.getFriendlyDayString(context, day.date, false),
+                Utility.getFriendlyDayString(context, day.date, true),
+                Utility.getIconResourceForWeatherCondition(weatherId),
+                Utility.getArtResourceForWeatherCondition(weatherId),
+                useLocalGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId),
+                description,
+                context.getString(R.string.a11y_forecast, description),
+                highText,
+                context.getString(R.string.a11y_high_temp, highText),
+                lowText,
+                context.getString(R.string.a11y_low_temp, lowText));
+    }
+
+    public long getDate() {
+        return day.date;
+    }
+
+    /*
+        Rows are equal when they display the same thing, which is what decides whether the list
+        has to bind a row again.  The accessibility strings are made from the displayed ones.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ForecastRow)) return false;
+        ForecastRow row = (ForecastRow) o;
+        return day.date == row.day.date
+                && iconResource == row.iconResource
+                && artResource == row.artResource
+                && TextUtils.equals(artUrl, row.artUrl)
+                && TextUtils.equals(dayText, row.dayText)
+                && TextUtils.equals(longDayText, row.longDayText)
+                && TextUtils.equals(description, row.description)
+                && TextUtils.equals(highText, row.highText)
+                && TextUtils.equals(lowText, row.lowText);
+    }
+
+    @Override
+    public int hashCode() {
+        return day.hashCode();
+    }
+}
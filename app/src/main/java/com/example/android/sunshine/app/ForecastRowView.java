@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.style.TextAppearanceSpan;
+import android.util.AttributeSet;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+/**
+ * A forecast list row that draws its four texts itself instead of holding a TextView for each.
+ *
+ * The row has a fixed height, worked out from the font metrics when the view is created, so
+ * binding new text never needs another measure or layout pass.  Text is laid out once per
+ * string, size and width, into StaticLayouts that are shared by all the rows of the same kind:
+ * day names and temperatures repeat a lot down the list.
+ *
+ * The icon is the one child view, with the id list_item_icon.  It stays an ImageView because
+ * Glide loads into it, and because the shared element transition to the detail screen needs a
+ * view of its own to move.  The texts are read out through the content description of the row.
+ *
+ * Set app:todayLayout for the large row at the top of the list.  In a right-to-left layout the
+ * row is mirrored, and the texts are aligned to the start and end of the row whatever the
+ * direction of the text itself, as the TextViews with start and end gravity used to be.
+ */
+public class ForecastRowView extends ViewGroup {
+
+    static final int SLOT_DATE = 0;
+    static final int SLOT_DESCRIPTION = 1;
+    static final int SLOT_HIGH = 2;
+    static final int SLOT_LOW = 3;
+    private static final int SLOT_COUNT = 4;
+
+    // Layouts are only made and drawn on the main thread, so the cache needs no locking
+    private static final LruCache<String, StaticLayout> sLayoutCache = new LruCache<>(96);
+
+    private final boolean mTodayLayout;
+    private final TextPaint[] mPaints = new TextPaint[SLOT_COUNT];
+    private final Layout.Alignment[] mAlignments = new Layout.Alignment[SLOT_COUNT];
+    private final int[] mLineHeights = new int[SLOT_COUNT];
+
+    private final CharSequence[] mTexts = new CharSequence[SLOT_COUNT];
+    private final StaticLayout[] mLayouts = new StaticLayout[SLOT_COUNT];
+    // Where each text goes, set by onLayout
+    private final int[] mLeft = new int[SLOT_COUNT];
+    private final int[] mTop = new int[SLOT_COUNT];
+    private final int[] mWidth = new int[SLOT_COUNT];
+    private boolean mRtl;
+
+    private final int mSpacing;
+    private final int mIconSize;
+    private final int mMinHeight;
+    private final int mTextWidth;
+    private final int mTemperatureSpace;
+
+    private ImageView mIconView;
+
+    public ForecastRowView(Context context) {
+        this(context, null);
+    }
+
+    public ForecastRowView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ForecastRowView);
+        mTodayLayout = a.getBoolean(R.styleable.ForecastRowView_todayLayout, false);
+        a.recycle();
+
+        TypedArray theme = context.obtainStyledAttributes(
+                new int[]{android.R.attr.listPreferredItemHeight});
+        mMinHeight = mTodayLayout ? 0 : theme.getDimensionPixelSize(0, 0);
+        theme.recycle();
+
+        Resources res = getResources();
+        mSpacing = res.getDimensionPixelSize(R.dimen.abc_list_item_padding_horizontal_material);
+        mTextWidth = res.getDimensionPixelSize(R.dimen.forecast_text_width);
+        mTemperatureSpace = res.getDimensionPixelSize(R.dimen.forecast_temperature_space);
+        Typeface light = Typeface.create("sans-serif-light", Typeface.NORMAL);
+        if (mTodayLayout) {
+            mIconSize = res.getDimensionPixelSize(R.dimen.today_icon);
+            setTextStyle(SLOT_DATE, R.style.TextAppearance_AppCompat_Title, null, 0,
+                    R.color.secondary_text);
+            setTextStyle(SLOT_DESCRIPTION, R.style.TextAppearance_AppCompat_Title, null, 0,
+                    R.color.secondary_text);
+            setTextStyle(SLOT_HIGH, 0, light, R.dimen.today_high_text_size, R.color.primary_text);
+            setTextStyle(SLOT_LOW, 0, light, R.dimen.today_low_text_size, R.color.secondary_text);
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                mAlignments[slot] = Layout.Alignment.ALIGN_CENTER;
+            }
+        } else {
+            mIconSize = res.getDimensionPixelSize(R.dimen.list_icon);
+            setTextStyle(SLOT_DATE, R.style.TextAppearance_AppCompat_Subhead, null, 0, 0);
+            setTextStyle(SLOT_DESCRIPTION, R.style.TextAppearance_AppCompat_Body1, null, 0,
+                    R.color.secondary_text);
+            setTextStyle(SLOT_HIGH, 0, light, R.dimen.forecast_text_size, R.color.primary_text);
+            setTextStyle(SLOT_LOW, 0, light, R.dimen.forecast_text_size,
+                    R.color.forecast_low_text);
+            mAlignments[SLOT_DATE] = Layout.Alignment.ALIGN_NORMAL;
+            mAlignments[SLOT_DESCRIPTION] = Layout.Alignment.ALIGN_NORMAL;
+            mAlignments[SLOT_HIGH] = Layout.Alignment.ALIGN_OPPOSITE;
+            mAlignments[SLOT_LOW] = Layout.Alignment.ALIGN_OPPOSITE;
+        }
+
+        // The texts are drawn by the row itself
+        setWillNotDraw(false);
+    }
+
+    private void setTextStyle(int slot, int textAppearance, Typeface typeface, int textSize,
+                              int color) {
+        Context context = getContext();
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.density = getResources().getDisplayMetrics().density;
+        if (0 != textAppearance) {
+            TextAppearanceSpan appearance = new TextAppearanceSpan(context, textAppearance);
+            appearance.updateMeasureState(paint);
+            appearance.updateDrawState(paint);
+        }
+        if (null != typeface) {
+            paint.setTypeface(typeface);
+        }
+        if (0 != textSize) {
+            paint.setTextSize(getResources().getDimension(textSize));
+        }
+        if (0 != color) {
+            paint.setColor(ContextCompat.getColor(context, color));
+        }
+        mPaints[slot] = paint;
+        mLineHeights[slot] = paint.getFontMetricsInt(null);
+    }
+
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        mIconView = (ImageView) findViewById(R.id.list_item_icon);
+    }
+
+    public ImageView getIconView() {
+        return mIconView;
+    }
+
+    /**
+     * Shows the texts of a row.  Nothing is measured again, the row is only redrawn.
+     */
+    public void setForecast(CharSequence date, CharSequence description, CharSequence high,
+                            CharSequence low) {
+        setText(SLOT_DATE, date);
+        setText(SLOT_DESCRIPTION, description);
+        setText(SLOT_HIGH, high);
+        setText(SLOT_LOW, low);
+    }
+
+    private void setText(int slot, CharSequence text) {
+        if (!TextUtils.equals(mTexts[slot], text)) {
+            mTexts[slot] = text;
+            mLayouts[slot] = null;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int height;
+        if (mTodayLayout) {
+            // Date across the top, then the icon next to the high, then the description next
+            // to the low, like a two column grid
+            height = mSpacing + mLineHeights[SLOT_DATE] + mSpacing
+                    + Math.max(mIconSize, mLineHeights[SLOT_HIGH])
+                    + Math.max(mLineHeights[SLOT_DESCRIPTION], mLineHeights[SLOT_LOW])
+                    + mSpacing;
+        } else {
+            height = Math.max(mIconSize, Math.max(
+                    mLineHeights[SLOT_DATE] + mLineHeights[SLOT_DESCRIPTION],
+                    mLineHeights[SLOT_HIGH]));
+        }
+        height = Math.max(mMinHeight, height + getPaddingTop() + getPaddingBottom());
+
+        int iconSpec = MeasureSpec.makeMeasureSpec(mIconSize, MeasureSpec.EXACTLY);
+        if (null != mIconView) {
+            mIconView.measure(iconSpec, iconSpec);
+        }
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    /*
+        The children and texts are placed as if the row were left to right, with the start
+        padding on the left, and mirrored when they're placed if it isn't.
+     */
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        boolean rtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        if (mRtl != rtl) {
+            mRtl = rtl;
+            for (int slot = 0; slot < SLOT_COUNT; slot++) {
+                mLayouts[slot] = null;
+            }
+        }
+        int width = r - l;
+        int height = b - t;
+        int start = ViewCompat.getPaddingStart(this);
+        int end = ViewCompat.getPaddingEnd(this);
+        int top = getPaddingTop();
+        int contentHeight = height - top - getPaddingBottom();
+        int iconLeft;
+        int iconTop;
+        if (mTodayLayout) {
+            int left = start;
+            int columnWidth = (width - left - end) / 2;
+            placeText(SLOT_DATE, left, top + mSpacing, columnWidth * 2, width);
+
+            int secondRowTop = top + mSpacing + mLineHeights[SLOT_DATE] + mSpacing;
+            int secondRowHeight = Math.max(mIconSize, mLineHeights[SLOT_HIGH]);
+            iconLeft = left + (columnWidth - mIconSize) / 2;
+            iconTop = secondRowTop + (secondRowHeight - mIconSize) / 2;
+            placeText(SLOT_HIGH, left + columnWidth,
+                    secondRowTop + (secondRowHeight - mLineHeights[SLOT_HIGH]) / 2, columnWidth,
+                    width);
+
+            int thirdRowTop = secondRowTop + secondRowHeight;
+            int thirdRowHeight = Math.max(mLineHeights[SLOT_DESCRIPTION], mLineHeights[SLOT_LOW]);
+            placeText(SLOT_DESCRIPTION, left,
+                    thirdRowTop + (thirdRowHeight - mLineHeights[SLOT_DESCRIPTION]) / 2,
+                    columnWidth, width);
+            placeText(SLOT_LOW, left + columnWidth,
+                    thirdRowTop + (thirdRowHeight - mLineHeights[SLOT_LOW]) / 2, columnWidth,
+                    width);
+        } else {
+            // Icon, then the date over the description, then the high and low at the end
+            int left = start + mSpacing;
+            int right = width - end - mSpacing;
+            iconLeft = left;
+            iconTop = top + (contentHeight - mIconSize) / 2;
+
+            int lowLeft = right - mTextWidth;
+            int highLeft = lowLeft - mTemperatureSpace - mTextWidth;
+            int temperatureTop = top + (contentHeight - mLineHeights[SLOT_HIGH]) / 2;
+            placeText(SLOT_HIGH, highLeft, temperatureTop, mTextWidth, width);
+            placeText(SLOT_LOW, lowLeft, temperatureTop, mTextWidth, width);
+
+            int textLeft = iconLeft + mIconSize + mSpacing;
+            int textWidth = highLeft - textLeft;
+            int dateTop = top + (contentHeight - mLineHeights[SLOT_DATE]
+                    - mLineHeights[SLOT_DESCRIPTION]) / 2;
+            placeText(SLOT_DATE, textLeft, dateTop, textWidth, width);
+            placeText(SLOT_DESCRIPTION, textLeft, dateTop + mLineHeights[SLOT_DATE], textWidth,
+                    width);
+        }
+        if (null != mIconView) {
+            iconLeft = mirror(iconLeft, mIconSize, width);
+            mIconView.layout(iconLeft, iconTop, iconLeft + mIconSize, iconTop + mIconSize);
+        }
+    }
+
+    private int mirror(int left, int width, int rowWidth) {
+        return mRtl ? rowWidth - left - width : left;
+    }
+
+    private void placeText(int slot, int left, int top, int width, int rowWidth) {
+        width = Math.max(0, width);
+        if (mWidth[slot] != width) {
+            mLayouts[slot] = null;
+        }
+        mLeft[slot] = mirror(left, width, rowWidth);
+        mTop[slot] = top;
+        mWidth[slot] = width;
+    }
+
+    // Where a text is drawn, for tests
+    int getTextLeft(int slot) {
+        return mLeft[slot];
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            StaticLayout layout = getLayout(slot);
+            if (null != layout) {
+                canvas.save();
+                canvas.translate(mLeft[slot], mTop[slot]);
+                layout.draw(canvas);
+                canvas.restore();
+            }
+        }
+    }
+
+    StaticLayout getLayout(int slot) {
+        if (null == mLayouts[slot] && null != mTexts[slot] && mWidth[slot] > 0) {
+            // The text size is part of the key, as the cache outlives a change of font scale
+            String key = (mTodayLayout ? "t" : "f") + (mRtl ? "r" : "l") + slot + ':'
+                    + mPaints[slot].getTextSize() + ':' + mWidth[slot] + ':' + mTexts[slot];
+            StaticLayout layout = sLayoutCache.get(key);
+            if (null == layout) {
+                // Every text is a single line, cut short if it doesn't fit
+                CharSequence text = TextUtils.ellipsize(mTexts[slot], mPaints[slot],
+                        mWidth[slot], TextUtils.TruncateAt.END);
+                layout = new StaticLayout(text, mPaints[slot], mWidth[slot], mAlignments[slot],
+                        1f, 0f, false);
+                // The alignment follows the direction of the text, which can be the other one
+                // than the row's, as digits are left to right
+                boolean rtlText = layout.getParagraphDirection(0) == Layout.DIR_RIGHT_TO_LEFT;
+                if (rtlText != mRtl && Layout.Alignment.ALIGN_CENTER != mAlignments[slot]) {
+                    layout = new StaticLayout(text, mPaints[slot], mWidth[slot],
+                            Layout.Alignment.ALIGN_NORMAL == mAlignments[slot]
+                                    ? Layout.Alignment.ALIGN_OPPOSITE
+                                    : Layout.Alignment.ALIGN_NORMAL,
+                            1f, 0f, false);
+                }
+                sLayoutCache.put(key, layout);
+            }
+            mLayouts[slot] = layout;
+        }
+        return mLayouts[slot];
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherProjections.Forecast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable copy of the forecast of one location, one {@link ForecastRow} per date in
+ * ascending order.  Each snapshot also records the dates whose rows changed since the snapshot
+ * it was built from.
+ */
+public final class ForecastSnapshot {
+
+    /**
+     * The forecast of one day.  Days are compared by value, so that a day which was read again
+     * without changing is not reported as changed.
+     */
+    public static final class Day {
+        public final long id;
+        public final long date;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+
+        Day(long id, long date, int weatherId, String description, double high, double low) {
+            this.id = id;
+            this.date = date;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+        }
+
+        // The cursor must have been queried with WeatherProjections.Forecast.COLUMNS
+        static Day fromCursor(Cursor cursor) {
+            return new Day(Forecast.getId(cursor),
+                    Forecast.getDate(cursor),
+                    Forecast.getWeatherId(cursor),
+                    Forecast.getShortDesc(cursor),
+                    Forecast.getMaxTemp(cursor),
+                    Forecast.getMinTemp(cursor));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Day)) return false;
+            Day day = (Day) o;
+            return id == day.id && date == day.date && weatherId == day.weatherId
+                    && Double.compare(high, day.high) == 0
+                    && Double.compare(low, day.low) == 0
+                    && (description == null ? day.description == null
+                            : description.equals(day.description));
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (date ^ (date >>> 32));
+        }
+    }
+
+    private static final ForecastRow[] NO_ROWS = new ForecastRow[0];
+    private static final long[] NO_DATES = new long[0];
+
+    private final String mLocationSetting;
+    private final int mVersion;
+    private final int mPreviousVersion;
+    private final ForecastRow[] mRows;
+    private final long[] mChangedDates;
+
+    private ForecastSnapshot(String locationSetting, int version, int previousVersion,
+                             ForecastRow[] rows, long[] changedDates) {
+        mLocationSetting = locationSetting;
+        mVersion = version;
+        mPreviousVersion = previousVersion;
+        mRows = rows;
+        mChangedDates = changedDates;
+    }
+
+    /**
+     * The snapshot of a location that has not been read yet.
+     */
+    static ForecastSnapshot empty(String locationSetting) {
+        return new ForecastSnapshot(locationSetting, 0, 0, NO_ROWS, NO_DATES);
+    }
+
+    /**
+     * Builds the snapshot that follows this one, with the given rows in place of the current
+     * ones.  Both lists must be in ascending date order.
+     */
+    ForecastSnapshot next(List<ForecastRow> rows) {
+        ForecastRow[] newRows = rows.toArray(new ForecastRow[rows.size()]);
+        return new ForecastSnapshot(mLocationSetting, mVersion + 1, mVersion, newRows,
+                diff(mRows, newRows));
+    }
+
+    /*
+        Walks both date ordered lists together and returns the dates that were added, removed
+        or changed between them, in their values or in how they are shown.
+     */
+    private static long[] diff(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        long[] changed = new long[oldRows.length + newRows.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldRows.length || j < newRows.length) {
+            if (j == newRows.length
+                    || (i < oldRows.length && oldRows[i].getDate() < newRows[j].getDate())) {
+                changed[count++] = oldRows[i++].getDate();
+            } else if (i == oldRows.length || newRows[j].getDate() < oldRows[i].getDate()) {
+                changed[count++] = newRows[j++].getDate();
+            } else {
+                // A day that reads the same may still be shown differently, after midnight or
+                // when the units changed
+                if (!oldRows[i].day.equals(newRows[j].day) || !oldRows[i].equals(newRows[j])) {
+                    changed[count++] = newRows[j].getDate();
+                }
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    /**
+     * Returns the days of this snapshot dated from today on, ready to be merged with fresh rows.
+     */
+    List<Day> daysFrom(long today) {
+        ArrayList<Day> days = new ArrayList<>(mRows.length);
+        for (ForecastRow row : mRows) {
+            if (row.getDate() >= today) {
+                days.add(row.day);
+            }
+        }
+        return days;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * Every snapshot a loader publishes gets a higher version than the one before it.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * The version of the snapshot that {@link #getChangedDates()} is relative to.
+     */
+    public int getPreviousVersion() {
+        return mPreviousVersion;
+    }
+
+    public long[] getChangedDates() {
+        return mChangedDates.clone();
+    }
+
+    public boolean hasChanges() {
+        return mChangedDates.length > 0;
+    }
+
+    public int getCount() {
+        return mRows.length;
+    }
+
+    public ForecastRow getRow(int position) {
+        return mRows[position];
+    }
+
+    /**
+     * Returns the position of the day with the given date, or -1 if there is none.
+     */
+    public int indexOfDate(long date) {
+        int low = 0;
+        int high = mRows.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleDate = mRows[middle].getDate();
+            if (middleDate < date) {
+                low = middle + 1;
+            } else if (middleDate > date) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProjections;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small binary copy of the upcoming days of the preferred location, written after every sync
+ * so that a cold start can show the forecast before the database has been opened.
+ *
+ * The file is memory mapped to read it, and laid out as (big endian):
+ *
+ *     int    magic, "SNSH"
+ *     int    format version
+ *     string location setting
+ *     int    number of days, then for each day:
+ *         long id, long date, int weather id, double high, double low, string description
+ *
+ * where a string is an int byte count followed by UTF-8 bytes.  A file with another magic,
+ * version or location is ignored, and so is one whose counts don't match its size.
+ */
+public final class ForecastSnapshotFile {
+    private static final String LOG_TAG = ForecastSnapshotFile.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast_snapshot.bin";
+
+    private static final int MAGIC = 0x534e5348;
+    // 2: string lengths are ints
+    private static final int FORMAT_VERSION = 2;
+    // Far more than the two weeks a sync fetches, anything bigger isn't one of ours
+    private static final int MAX_FILE_SIZE = 64 * 1024;
+
+    // The bytes of a day without its description
+    private static final int DAY_SIZE = 8 + 8 + 4 + 8 + 8 + 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ForecastSnapshotFile() {
+    }
+
+    // The snapshot can always be rebuilt, so it lives with the cache and is left out of backups
+    private static File getFile(Context context) {
+        return new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    /**
+     * Reads the days of the location from the database and writes them to the file.  Called
+     * by the sync adapter, off the main thread.
+     */
+    public static void write(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                WeatherProjections.Forecast.COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == cursor) {
+            return;
+        }
+        ArrayList<ForecastSnapshot.Day> days = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                days.add(ForecastSnapshot.Day.fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        File file = getFile(context);
+        // Written next to the file and renamed over it, so a reader never sees half a file
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            out.write(encode(locationSetting, days));
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                Log.w(LOG_TAG, "Couldn't replace " + file);
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't write " + tempFile, e);
+            tempFile.delete();
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing more can be done about it
+                }
+            }
+        }
+    }
+
+    static byte[] encode(String locationSetting, List<ForecastSnapshot.Day> days) {
+        byte[] location = locationSetting.getBytes(UTF_8);
+        byte[][] descriptions = new byte[days.size()][];
+        int size = 4 + 4 + 4 + location.length + 4;
+        for (int i = 0; i < days.size(); i++) {
+            String description = days.get(i).description;
+            descriptions[i] = null == description ? new byte[0] : description.getBytes(UTF_8);
+            size += DAY_SIZE + descriptions[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(location.length);
+        buffer.put(location);
+        buffer.putInt(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            ForecastSnapshot.Day day = days.get(i);
+            buffer.putLong(day.id);
+            buffer.putLong(day.date);
+            buffer.putInt(day.weatherId);
+            buffer.putDouble(day.high);
+            buffer.putDouble(day.low);
+            buffer.putInt(descriptions[i].length);
+            buffer.put(descriptions[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Returns the days of the location from today on, or null if the file doesn't have any.
+     * Called by the forecast loader on its thread.  The file is a few hundred bytes, and mapping
+     * it skips the copies of a stream read.
+     */
+    static List<ForecastSnapshot.Day> read(Context context, String locationSetting, long today) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > MAX_FILE_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buffer, locationSetting, today);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read " + file, e);
+            return null;
+        } finally {
+            if (null != randomAccessFile) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing more can be done about it
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the days of the location from today on, or null if the buffer doesn't have any,
+     * or isn't a whole snapshot.
+     */
+    static List<ForecastSnapshot.Day> decode(ByteBuffer buffer, String locationSetting,
+                                             long today) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!locationSetting.equals(getString(buffer))) {
+                return null;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / DAY_SIZE) {
+                Log.w(LOG_TAG, "Bad day count " + count);
+                return null;
+            }
+            ArrayList<ForecastSnapshot.Day> days = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long date = buffer.getLong();
+                int weatherId = buffer.getInt();
+                double high = buffer.getDouble();
+                double low = buffer.getDouble();
+                String description = getString(buffer);
+                // The file may be from a sync a few days ago
+                if (date >= today) {
+                    days.add(new ForecastSnapshot.Day(id, date, weatherId, description, high, low));
+                }
+            }
+            if (buffer.hasRemaining()) {
+                Log.w(LOG_TAG, buffer.remaining() + " bytes after the last day");
+                return null;
+            }
+            return days.isEmpty() ? null : days;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Truncated or corrupt snapshot", e);
+            return null;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Opt-in frame time statistics, kept per screen and per phase of a screen (e.g. while the
+ * forecast list scrolls), together with the time spent in a few named sections of code.
+ *
+ * Collection is off unless the log tag is enabled before the app starts:
+ *
+ *     adb shell setprop log.tag.FrameStats DEBUG
+ *
+ * and the numbers are printed by the activities' dump:
+ *
+ *     adb shell dumpsys activity com.example.android.sunshine.app [reset]
+ *
+ * On Nougat and later the durations come from FrameMetrics and are the real time each frame
+ * took, and a frame is slow when it takes longer than a frame interval.  From Jelly Bean on they
+ * are the time between two Choreographer frames, which are only recorded during a phase, when
+ * the screen is meant to draw every frame: an idle screen draws none, and asking for frame
+ * callbacks would keep it from idling.  The interval between two vsyncs varies a little, so
+ * these frames only count as slow from one and a half frame intervals on, when a vsync was
+ * missed.  Earlier platforms record nothing.
+ */
+public final class FrameStats {
+    static final String LOG_TAG = "FrameStats";
+
+    private static final boolean ENABLED = Log.isLoggable(LOG_TAG, Log.DEBUG);
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // A 60Hz frame interval.  A frame is slow when it misses a vsync, and frozen when the screen
+    // stalls visibly.
+    private static final long FRAME_INTERVAL_NANOS = 16666667L;
+    private static final long FROZEN_FRAME_NANOS = 700 * NANOS_PER_MILLI;
+    // Upper limits of the histogram buckets, the last bucket takes everything longer
+    private static final long[] BUCKET_LIMITS_MILLIS = {8, 16, 24, 33, 50, 100, 200, 500, 700};
+
+    // Frames are recorded on the FrameMetrics thread on newer platforms, everything else
+    // happens on the main thread
+    private static final Object sLock = new Object();
+    private static final Map<String, Histogram> sHistograms = new LinkedHashMap<>();
+    private static final Map<String, Section> sSections = new LinkedHashMap<>();
+    private static final WeakHashMap<Activity, Recorder> sRecorders = new WeakHashMap<>();
+    private static volatile String sPhase;
+
+    private FrameStats() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Starts recording the frames of an activity under the name of its screen.  Called from
+     * onResume.
+     */
+    public static void start(Activity activity, String screen) {
+        if (!ENABLED || sRecorders.containsKey(activity)) return;
+        Recorder recorder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            recorder = new FrameMetricsRecorder(activity.getWindow(), screen);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            recorder = new ChoreographerRecorder(screen);
+        } else {
+            return;
+        }
+        sRecorders.put(activity, recorder);
+        recorder.start();
+    }
+
+    /**
+     * Stops recording the frames of an activity.  Called from onPause.
+     */
+    public static void stop(Activity activity) {
+        if (!ENABLED) return;
+        Recorder recorder = sRecorders.remove(activity);
+        if (null != recorder) {
+            recorder.stop();
+        }
+        setPhase(null);
+    }
+
+    /**
+     * Frames are also counted under the phase until it is set to null or the screen stops.
+     * Called on the main thread.
+     */
+    public static void setPhase(String phase) {
+        if (!ENABLED) return;
+        sPhase = phase;
+        for (Recorder recorder : sRecorders.values()) {
+            recorder.setActive(null != phase);
+        }
+    }
+
+    /**
+     * Returns the start time of a timed section, to be passed to {@link #endSection}.
+     */
+    public static long startSection() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void endSection(String name, long startNanos) {
+        if (!ENABLED) return;
+        long duration = System.nanoTime() - startNanos;
+        synchronized (sLock) {
+            Section section = sSections.get(name);
+            if (null == section) {
+                section = new Section();
+                sSections.put(name, section);
+            }
+            section.count++;
+            section.totalNanos += duration;
+            section.maxNanos = Math.max(section.maxNanos, duration);
+        }
+    }
+
+    static void recordFrame(String screen, long durationNanos, long slowFrameNanos) {
+        String phase = sPhase;
+        synchronized (sLock) {
+            getHistogram(screen).record(durationNanos, slowFrameNanos);
+            if (null != phase) {
+                getHistogram(screen + "/" + phase).record(durationNanos, slowFrameNanos);
+            }
+        }
+    }
+
+    private static Histogram getHistogram(String name) {
+        Histogram histogram = sHistograms.get(name);
+        if (null == histogram) {
+            histogram = new Histogram();
+            sHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Prints everything recorded so far.  An argument of "reset" clears it afterwards.
+     */
+    public static void dump(String prefix, PrintWriter writer, String[] args) {
+        writer.print(prefix);
+        writer.println("Frame stats:");
+        if (!ENABLED) {
+            writer.print(prefix);
+            writer.println("  disabled, enable with: adb shell setprop log.tag." + LOG_TAG
+                    + " DEBUG");
+            return;
+        }
+        synchronized (sLock) {
+            for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+                entry.getValue().dump(prefix + "  ", entry.getKey(), writer);
+            }
+            for (Map.Entry<String, Section> entry : sSections.entrySet()) {
+                Section section = entry.getValue();
+                writer.print(prefix);
+                writer.println(String.format(Locale.US,
+                        "  section %s: calls=%d total=%.2fms avg=%.3fms max=%.3fms",
+                        entry.getKey(), section.count,
+                        (double) section.totalNanos / NANOS_PER_MILLI,
+                        (double) section.totalNanos / section.count / NANOS_PER_MILLI,
+                        (double) section.maxNanos / NANOS_PER_MILLI));
+            }
+            if (null != args) {
+                for (String arg : args) {
+                    if ("reset".equals(arg)) {
+                        sHistograms.clear();
+                        sSections.clear();
+                        writer.print(prefix);
+                        writer.println("  reset");
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Histogram {
+        final long[] buckets = new long[BUCKET_LIMITS_MILLIS.length + 1];
+        long frames;
+        long slowFrames;
+        long frozenFrames;
+        long totalNanos;
+        long maxNanos;
+
+        void record(long durationNanos, long slowFrameNanos) {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MILLIS.length
+                    && durationNanos > BUCKET_LIMITS_MILLIS[bucket] * NANOS_PER_MILLI) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            frames++;
+            if (durationNanos > slowFrameNanos) slowFrames++;
+            if (durationNanos > FROZEN_FRAME_NANOS) frozenFrames++;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+        }
+
+        void dump(String prefix, String name, PrintWriter writer) {
+            writer.print(prefix);
+            writer.println(String.format(Locale.US,
+                    "%s: frames=%d slow=%d (%.1f%%) frozen=%d avg=%.2fms max=%.2fms",
+                    name, frames, slowFrames, frames == 0 ? 0f : 100f * slowFrames / frames,
+                    frozenFrames, frames == 0 ? 0f : (double) totalNanos / frames / NANOS_PER_MILLI,
+                    (double) maxNanos / NANOS_PER_MILLI));
+            StringBuilder line = new StringBuilder(prefix).append("  ");
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                if (bucket < BUCKET_LIMITS_MILLIS.length) {
+                    line.append("<=").append(BUCKET_LIMITS_MILLIS[bucket]);
+                } else {
+                    line.append('>').append(BUCKET_LIMITS_MILLIS[bucket - 1]);
+                }
+                line.append("ms:").append(buckets[bucket]).append(' ');
+            }
+            writer.println(line);
+        }
+    }
+
+    private static final class Section {
+        long count;
+        long totalNanos;
+        long maxNanos;
+    }
+
+    private interface Recorder {
+        void start();
+
+        void stop();
+
+        // Whether the screen is in a phase
+        void setActive(boolean active);
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private static final class FrameMetricsRecorder
+            implements Recorder, Window.OnFrameMetricsAvailableListener {
+        private static HandlerThread sThread;
+
+        private final Window mWindow;
+        private final String mScreen;
+
+        FrameMetricsRecorder(Window window, String screen) {
+            mWindow = window;
+            mScreen = screen;
+        }
+
+        @Override
+        public void start() {
+            if (null == sThread) {
+                sThread = new HandlerThread(LOG_TAG);
+                sThread.start();
+            }
+            mWindow.addOnFrameMetricsAvailableListener(this, new Handler(sThread.getLooper()));
+        }
+
+        @Override
+        public void stop() {
+            mWindow.removeOnFrameMetricsAvailableListener(this);
+        }
+
+        @Override
+        public void setActive(boolean active) {
+            // Only frames that were drawn are reported, so all of them are recorded
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+                                            int dropCountSinceLastInvocation) {
+            recordFrame(mScreen, frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION),
+                    FRAME_INTERVAL_NANOS);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class ChoreographerRecorder
+            implements Recorder, Choreographer.FrameCallback {
+        private static final long SLOW_FRAME_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+
+        private final String mScreen;
+        private long mLastFrameNanos;
+        private boolean mRunning;
+        private boolean mActive;
+
+        ChoreographerRecorder(String screen) {
+            mScreen = screen;
+        }
+
+        @Override
+        public void start() {
+            mRunning = true;
+            setActive(null != sPhase);
+        }
+
+        @Override
+        public void stop() {
+            mRunning = false;
+            setActive(false);
+        }
+
+        @Override
+        public void setActive(boolean active) {
+            active &= mRunning;
+            if (active == mActive) return;
+            mActive = active;
+            if (active) {
+                // The time since the last phase isn't a frame
+                mLastFrameNanos = 0;
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mActive) return;
+            if (0 != mLastFrameNanos) {
+                recordFrame(mScreen, frameTimeNanos - mLastFrameNanos, SLOW_FRAME_NANOS);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
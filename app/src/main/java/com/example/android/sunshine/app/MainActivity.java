@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
@@ -29,6 +31,10 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
@@ -48,11 +54,15 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.beginSection("MainActivity.onCreate");
+        StartupTrace.mark("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
+        StartupTrace.beginSection("inflate");
         setContentView(R.layout.activity_main);
+        StartupTrace.endSection();
         Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
         getSupportActionBar().setDisplayShowTitleEnabled(false);
@@ -89,24 +99,68 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // The sync account and the GCM registration aren't needed to show the forecast, so they
+        // wait until the first frame is up
+        runAfterFirstDraw(new Runnable() {
+            @Override
+            public void run() {
+                onFirstDraw();
+            }
+        });
+        StartupTrace.endSection();
+    }
+
+    private void runAfterFirstDraw(final Runnable runnable) {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted, so that it runs once this frame has been drawn
+                decorView.post(runnable);
+                return true;
+            }
+        });
+    }
+
+    private void onFirstDraw() {
+        StartupTrace.mark("first draw");
+        if (isFinishing()) {
+            return;
+        }
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
+        // not affect the behavior of the app, from a user perspective.  The check stays on the
+        // main thread, because it may have to show a dialog.
+        final boolean registerGcm = checkPlayServices();
+
+        // Creating the sync account goes through the AccountManager, and may add the account
+        // and request the first sync, so it runs in the background.
+        final Context context = getApplicationContext();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.beginSection("deferred startup");
+                SunshineSyncAdapter.initializeSyncAdapter(context);
+
+                if (registerGcm) {
+                    // Because this is the initial creation of the app, we'll want to be certain we have
+                    // a token. If we do not, then we will start the IntentService that will register this
+                    // application with GCM.
+                    SharedPreferences sharedPreferences =
+                            PreferenceManager.getDefaultSharedPreferences(context);
+                    boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+                    if (!sentToken) {
+                        Intent intent = new Intent(context, RegistrationIntentService.class);
+                        context.startService(intent);
+                    }
+                }
+                StartupTrace.endSection();
+                StartupTrace.mark("deferred startup done");
             }
-        }
+        });
     }
 
     @Override
@@ -148,6 +202,19 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             }
             mLocation = location;
         }
+        FrameStats.start(this, "forecast");
+    }
+
+    @Override
+    protected void onPause() {
+        FrameStats.stop(this);
+        super.onPause();
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        FrameStats.dump(prefix, writer, args);
     }
 
     @Override
@@ -25,8 +25,8 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
-import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStatusStore;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -37,7 +37,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
  * API Guide</a> for more information on developing a Settings UI.
  */
 public class SettingsActivity extends PreferenceActivity
-        implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
+        implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener,
+        SyncStatusStore.Observer {
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -57,6 +58,7 @@ public class SettingsActivity extends PreferenceActivity
     protected void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.registerOnSharedPreferenceChangeListener(this);
+        SyncStatusStore.get(this).registerObserver(this);
         super.onResume();
     }
 
@@ -65,6 +67,7 @@ public class SettingsActivity extends PreferenceActivity
     protected void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        SyncStatusStore.get(this).unregisterObserver(this);
         super.onPause();
     }
 
@@ -97,7 +100,9 @@ public class SettingsActivity extends PreferenceActivity
                 preference.setSummary(listPreference.getEntries()[prefIndex]);
             }
         } else if (key.equals(getString(R.string.pref_location_key))) {
-            @SunshineSyncAdapter.LocationStatus int status = Utility.getLocationStatus(this);
+            // The status of the location being shown, which may not have been saved yet
+            @SunshineSyncAdapter.LocationStatus int status =
+                    SyncStatusStore.get(this).getStatus(stringValue).code;
             switch (status) {
                 case SunshineSyncAdapter.LOCATION_STATUS_OK:
                     preference.setSummary(stringValue);
@@ -133,19 +138,22 @@ public class SettingsActivity extends PreferenceActivity
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
-            // first clear locationStatus
-            Utility.resetLocationStatus(this);
+            // first clear locationStatus.  The new location is read from the preferences, as
+            // SunshineSettings may not have heard of it yet
+            SyncStatusStore.get(this).reset(sharedPreferences.getString(key,
+                    getString(R.string.pref_location_default)));
             SunshineSyncAdapter.syncImmediately(this);
-        } else if ( key.equals(getString(R.string.pref_units_key)) ) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
-        } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
-            // our location status has changed.  Update the summary accordingly
+        }
+        // Changes of the units or the art pack reach the lists and widgets through
+        // SunshineSettings, which has them formatted again without a query
+    }
+
+    // Called when a sync of a location has finished.  Update the summary accordingly
+    @Override
+    public void onSyncStatusChanged(SyncStatusStore.Status status) {
+        if (status.locationSetting.equals(Utility.getPreferredLocation(this))) {
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
-        } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
     }
 
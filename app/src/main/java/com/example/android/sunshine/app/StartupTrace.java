@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+/**
+ * Marks the phases of a cold start, both as systrace sections and, with the log tag enabled
+ * (adb shell setprop log.tag.StartupTrace DEBUG), as log lines timed from the process start.
+ *
+ * The first time the forecast list draws rows, the time to first forecast is logged, with the
+ * tag enabled, and always reported to the system with reportFullyDrawn, which logcat shows as
+ * "Fully drawn".
+ */
+public final class StartupTrace {
+    static final String LOG_TAG = "StartupTrace";
+
+    // Before Nougat the process start isn't known, so the first use of this class stands in
+    private static final long sStartElapsed = getProcessStartElapsed();
+    private static boolean sFirstForecastReported;
+
+    private StartupTrace() {
+    }
+
+    private static long getProcessStartElapsed() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return getProcessStartElapsedN();
+        }
+        return SystemClock.elapsedRealtime();
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private static long getProcessStartElapsedN() {
+        return Process.getStartElapsedRealtime();
+    }
+
+    public static void beginSection(String name) {
+        TraceCompat.beginSection(name);
+    }
+
+    public static void endSection() {
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Logs that a phase of the start has been reached.
+     */
+    public static void mark(String phase) {
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, phase + " at +" + sinceStart() + "ms");
+        }
+    }
+
+    /**
+     * Called on the main thread when forecast rows have been laid out and are about to be drawn.
+     * Only the first call of the process is reported.
+     */
+    public static void reportFirstForecast(Activity activity) {
+        if (sFirstForecastReported) return;
+        sFirstForecastReported = true;
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Time to first forecast: +" + sinceStart() + "ms");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn(activity);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reportFullyDrawn(Activity activity) {
+        activity.reportFullyDrawn();
+    }
+
+    private static long sinceStart() {
+        return SystemClock.elapsedRealtime() - sStartElapsed;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Configures the one Glide the list, the detail view, the widgets and the notification share,
+ * registered in the manifest.
+ *
+ * All of them only show the weather art of a pack, a handful of small images, so the caches are
+ * a fraction of Glide's defaults, which are sized for galleries.  The art has no transparency
+ * worth keeping, so it is decoded to RGB_565, which halves the size of every bitmap.
+ */
+public class SunshineGlideModule implements GlideModule {
+    private static final String LOG_TAG = SunshineGlideModule.class.getSimpleName();
+
+    // Of the sizes Glide would pick for the screen
+    private static final int MEMORY_CACHE_DIVISOR = 2;
+    private static final int BITMAP_POOL_DIVISOR = 2;
+
+    private static final String DISK_CACHE_DIR = "weather_art";
+    private static final int DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static CountingResourceCache sMemoryCache;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator(context);
+        CountingResourceCache memoryCache = new CountingResourceCache(
+                calculator.getMemoryCacheSize() / MEMORY_CACHE_DIVISOR);
+        sMemoryCache = memoryCache;
+        builder.setMemoryCache(memoryCache)
+                .setBitmapPool(new LruBitmapPool(
+                        calculator.getBitmapPoolSize() / BITMAP_POOL_DIVISOR))
+                .setDiskCache(DiskLruCacheWrapper.get(
+                        new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_SIZE))
+                .setDecodeFormat(DecodeFormat.PREFER_RGB_565);
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+
+    /**
+     * Logs how often a load was answered from the memory cache since Glide was set up.  Loads
+     * of images that are still on screen are answered before the cache is asked, and aren't
+     * counted.  Only with the tag enabled, e.g.
+     * {@code adb shell setprop log.tag.SunshineGlideModule DEBUG}.
+     */
+    public static void logCacheStats() {
+        CountingResourceCache memoryCache = sMemoryCache;
+        if (null == memoryCache || !Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            return;
+        }
+        int hits = memoryCache.mHits.get();
+        int misses = memoryCache.mMisses.get();
+        int total = hits + misses;
+        Log.d(LOG_TAG, "Memory cache: " + hits + " hits, " + misses + " misses"
+                + (total > 0 ? ", " + (100 * hits / total) + "% hit rate" : ""));
+    }
+
+    /*
+        Glide takes a resource out of the memory cache when a load needs it, and puts it back
+        once nothing shows it anymore, so every removal by key is a load asking the cache.
+     */
+    private static final class CountingResourceCache extends LruResourceCache {
+        final AtomicInteger mHits = new AtomicInteger();
+        final AtomicInteger mMisses = new AtomicInteger();
+
+        CountingResourceCache(int size) {
+            super(size);
+        }
+
+        @Override
+        public Resource<?> remove(Key key) {
+            Resource<?> resource = super.remove(key);
+            if (null != resource) {
+                mHits.incrementAndGet();
+            } else {
+                mMisses.incrementAndGet();
+            }
+            return resource;
+        }
+    }
+}
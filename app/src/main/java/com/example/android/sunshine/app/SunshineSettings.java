@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable copy of the user's settings.  The current copy is read without locking from any
+ * thread, and replaced whenever one of the settings changes.
+ *
+ * The units and the art pack only change how the stored weather is shown.  When one of them
+ * changes, the presentation observers in the process are called and
+ * {@link #ACTION_PRESENTATION_CHANGED} is sent to the widgets, so that they format the weather
+ * they already have again instead of querying it again.
+ */
+public final class SunshineSettings {
+    public static final String ACTION_PRESENTATION_CHANGED =
+            "com.example.android.sunshine.app.ACTION_PRESENTATION_CHANGED";
+
+    public interface PresentationObserver {
+        /**
+         * Called on the main thread after the units or the art pack changed, or the art of
+         * the pack was downloaded.
+         */
+        void onPresentationChanged();
+    }
+
+    public final String location;
+    public final boolean metric;
+    // The value of the art pack preference, a URL format for the built in packs
+    public final String artPack;
+    public final boolean useLocalGraphics;
+    public final boolean notificationsEnabled;
+
+    private static final Object sLock = new Object();
+    private static volatile SunshineSettings sCurrent;
+    // SharedPreferences only keeps weak references to its listeners
+    private static Listener sListener;
+    private static final List<PresentationObserver> sPresentationObservers = new ArrayList<>();
+
+    private SunshineSettings(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        useLocalGraphics = artPack.equals(sunshineArtPack);
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(
+                        context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * Returns the current settings.  The first call reads them and starts listening for changes.
+     */
+    public static SunshineSettings get(Context context) {
+        SunshineSettings settings = sCurrent;
+        if (null != settings) {
+            return settings;
+        }
+        synchronized (sLock) {
+            if (null == sCurrent) {
+                Context appContext = context.getApplicationContext();
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                // Registered before reading, so that no change can fall in between
+                sListener = new Listener(appContext);
+                prefs.registerOnSharedPreferenceChangeListener(sListener);
+                sCurrent = new SunshineSettings(appContext, prefs);
+            }
+            return sCurrent;
+        }
+    }
+
+    public static void registerPresentationObserver(Context context,
+                                                    PresentationObserver observer) {
+        // Changes are only noticed once the settings have been read
+        get(context);
+        synchronized (sPresentationObservers) {
+            if (!sPresentationObservers.contains(observer)) {
+                sPresentationObservers.add(observer);
+            }
+        }
+    }
+
+    public static void unregisterPresentationObserver(PresentationObserver observer) {
+        synchronized (sPresentationObservers) {
+            sPresentationObservers.remove(observer);
+        }
+    }
+
+    /**
+     * Has the weather shown again from any thread, as after a settings change, e.g. when the
+     * art of the pack was downloaded.
+     */
+    static void postPresentationChanged(final Context context) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                notifyPresentationChanged(context);
+            }
+        });
+    }
+
+    private static void notifyPresentationChanged(Context context) {
+        List<PresentationObserver> observers;
+        synchronized (sPresentationObservers) {
+            observers = new ArrayList<>(sPresentationObservers);
+        }
+        for (PresentationObserver observer : observers) {
+            observer.onPresentationChanged();
+        }
+        // Setting the package ensures that only components in our app will receive the broadcast
+        context.sendBroadcast(new Intent(ACTION_PRESENTATION_CHANGED)
+                .setPackage(context.getPackageName()));
+    }
+
+    private static final class Listener
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Context mContext;
+        private final String[] mKeys;
+
+        Listener(Context context) {
+            mContext = context;
+            mKeys = new String[]{
+                    context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_units_key),
+                    context.getString(R.string.pref_art_pack_key),
+                    context.getString(R.string.pref_enable_notifications_key),
+            };
+        }
+
+        // SharedPreferences calls its listeners on the main thread
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            // The same file holds other state, such as the time of the last notification
+            for (String settingKey : mKeys) {
+                if (settingKey.equals(key)) {
+                    SunshineSettings previous = sCurrent;
+                    SunshineSettings settings = new SunshineSettings(mContext, prefs);
+                    sCurrent = settings;
+                    if (previous.metric != settings.metric
+                            || !previous.artPack.equals(settings.artPack)) {
+                        notifyPresentationChanged(mContext);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps an OpenWeatherMap condition id to its icon, art, label and art URL with one array
+ * lookup each.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ *
+ * The ids are three digits, so every id indexes a dense table of condition groups.  The icons,
+ * art and Muzei images only depend on the group and are shared by all instances.  The labels
+ * depend on the locale and the art URLs on the art pack, so an instance resolves them once and
+ * {@link #get(Context)} builds a new one when either changes.
+ */
+public final class WeatherConditions {
+
+    /**
+     * Turns the name of a condition's art (e.g. "light_rain") into the URL to load it from.
+     * The preferred art pack is looked up by the value of the art pack preference, see
+     * {@link #registerArtPack}.
+     */
+    public interface ArtPack {
+        String getArtUrl(String artName);
+    }
+
+    /**
+     * The art packs of the preference list, whose values are URL formats taking the art name.
+     */
+    static final class UrlFormatArtPack implements ArtPack {
+        private final String mFormat;
+
+        UrlFormatArtPack(String format) {
+            mFormat = format;
+        }
+
+        @Override
+        public String getArtUrl(String artName) {
+            return String.format(Locale.US, mFormat, artName);
+        }
+    }
+
+    private static final int ID_COUNT = 1000;
+    private static final int NO_GROUP = -1;
+
+    // The condition groups, the columns of the tables below
+    private static final int STORM = 0;
+    private static final int DRIZZLE = 1;
+    private static final int RAIN = 2;
+    private static final int SNOW = 3;
+    private static final int FOG = 4;
+    private static final int SQUALL = 5;
+    private static final int CLEAR = 6;
+    private static final int LIGHT_CLOUDS = 7;
+    private static final int CLOUDS = 8;
+
+    private static final int[] GROUP_ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy,
+    };
+
+    private static final int[] GROUP_ART = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_storm,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds,
+    };
+
+    private static final String[] GROUP_ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "storm",
+            "clear",
+            "light_clouds",
+            "clouds",
+    };
+
+    private static final String[] GROUP_IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg",
+    };
+
+    private static final byte[] GROUPS = new byte[ID_COUNT];
+    // 0 where a condition has no label of its own
+    private static final int[] LABEL_IDS = new int[ID_COUNT];
+
+    static {
+        Arrays.fill(GROUPS, (byte) NO_GROUP);
+        fillGroup(200, 232, STORM);
+        fillGroup(300, 321, DRIZZLE);
+        fillGroup(500, 504, RAIN);
+        fillGroup(511, 511, SNOW);
+        fillGroup(520, 531, RAIN);
+        fillGroup(600, 622, SNOW);
+        fillGroup(701, 761, FOG);
+        fillGroup(781, 781, SQUALL);
+        fillGroup(800, 800, CLEAR);
+        fillGroup(801, 801, LIGHT_CLOUDS);
+        fillGroup(802, 804, CLOUDS);
+
+        fillLabel(200, 232, R.string.condition_2xx);
+        fillLabel(300, 321, R.string.condition_3xx);
+        LABEL_IDS[500] = R.string.condition_500;
+        LABEL_IDS[501] = R.string.condition_501;
+        LABEL_IDS[502] = R.string.condition_502;
+        LABEL_IDS[503] = R.string.condition_503;
+        LABEL_IDS[504] = R.string.condition_504;
+        LABEL_IDS[511] = R.string.condition_511;
+        LABEL_IDS[520] = R.string.condition_520;
+        LABEL_IDS[531] = R.string.condition_531;
+        LABEL_IDS[600] = R.string.condition_600;
+        LABEL_IDS[601] = R.string.condition_601;
+        LABEL_IDS[602] = R.string.condition_602;
+        LABEL_IDS[611] = R.string.condition_611;
+        LABEL_IDS[612] = R.string.condition_612;
+        LABEL_IDS[615] = R.string.condition_615;
+        LABEL_IDS[616] = R.string.condition_616;
+        LABEL_IDS[620] = R.string.condition_620;
+        LABEL_IDS[621] = R.string.condition_621;
+        LABEL_IDS[622] = R.string.condition_622;
+        LABEL_IDS[701] = R.string.condition_701;
+        LABEL_IDS[711] = R.string.condition_711;
+        LABEL_IDS[721] = R.string.condition_721;
+        LABEL_IDS[731] = R.string.condition_731;
+        LABEL_IDS[741] = R.string.condition_741;
+        LABEL_IDS[751] = R.string.condition_751;
+        LABEL_IDS[761] = R.string.condition_761;
+        LABEL_IDS[762] = R.string.condition_762;
+        LABEL_IDS[771] = R.string.condition_771;
+        LABEL_IDS[781] = R.string.condition_781;
+        LABEL_IDS[800] = R.string.condition_800;
+        LABEL_IDS[801] = R.string.condition_801;
+        LABEL_IDS[802] = R.string.condition_802;
+        LABEL_IDS[803] = R.string.condition_803;
+        LABEL_IDS[804] = R.string.condition_804;
+        LABEL_IDS[900] = R.string.condition_900;
+        LABEL_IDS[901] = R.string.condition_901;
+        LABEL_IDS[902] = R.string.condition_902;
+        LABEL_IDS[903] = R.string.condition_903;
+        LABEL_IDS[904] = R.string.condition_904;
+        LABEL_IDS[905] = R.string.condition_905;
+        LABEL_IDS[906] = R.string.condition_906;
+        LABEL_IDS[951] = R.string.condition_951;
+        LABEL_IDS[952] = R.string.condition_952;
+        LABEL_IDS[953] = R.string.condition_953;
+        LABEL_IDS[954] = R.string.condition_954;
+        LABEL_IDS[955] = R.string.condition_955;
+        LABEL_IDS[956] = R.string.condition_956;
+        LABEL_IDS[957] = R.string.condition_957;
+        LABEL_IDS[958] = R.string.condition_958;
+        LABEL_IDS[959] = R.string.condition_959;
+        LABEL_IDS[960] = R.string.condition_960;
+        LABEL_IDS[961] = R.string.condition_961;
+        LABEL_IDS[962] = R.string.condition_962;
+    }
+
+    private static void fillGroup(int firstId, int lastId, int group) {
+        Arrays.fill(GROUPS, firstId, lastId + 1, (byte) group);
+    }
+
+    private static void fillLabel(int firstId, int lastId, int labelId) {
+        Arrays.fill(LABEL_IDS, firstId, lastId + 1, labelId);
+    }
+
+    private static final Map<String, ArtPack> sArtPacks = new HashMap<>();
+    private static volatile WeatherConditions sInstance;
+
+    private final String mArtPackKey;
+    private final Locale mLocale;
+    private final String[] mLabels;
+    private final String mUnknownLabelFormat;
+    private final String[] mArtUrls;
+
+    private WeatherConditions(Context context, String artPackKey, Locale locale) {
+        mArtPackKey = artPackKey;
+        mLocale = locale;
+
+        mLabels = new String[ID_COUNT];
+        for (int id = 0; id < ID_COUNT; id++) {
+            if (0 != LABEL_IDS[id]) {
+                mLabels[id] = context.getString(LABEL_IDS[id]);
+            }
+        }
+        mUnknownLabelFormat = context.getString(R.string.condition_unknown);
+
+        // Images that ArtPackManager downloaded are loaded from their files
+        ArtPack artPack = ArtPackManager.pin(context, artPackKey, getArtPack(artPackKey));
+        mArtUrls = new String[GROUP_ART_NAMES.length];
+        for (int group = 0; group < GROUP_ART_NAMES.length; group++) {
+            mArtUrls[group] = artPack.getArtUrl(GROUP_ART_NAMES[group]);
+        }
+    }
+
+    /**
+     * Returns the conditions for the current locale and art pack preference.
+     */
+    public static WeatherConditions get(Context context) {
+        String artPackKey = SunshineSettings.get(context).artPack;
+        Locale locale = context.getResources().getConfiguration().locale;
+
+        WeatherConditions conditions = sInstance;
+        if (null == conditions || !conditions.mArtPackKey.equals(artPackKey)
+                || !conditions.mLocale.equals(locale)) {
+            // Two threads may both build one after a change, they are the same anyway
+            conditions = new WeatherConditions(context.getApplicationContext(), artPackKey,
+                    locale);
+            sInstance = conditions;
+        }
+        return conditions;
+    }
+
+    /**
+     * Makes an art pack available under a value of the art pack preference.  Values that no
+     * art pack was registered for are used as a URL format, as the built in packs are.
+     */
+    public static void registerArtPack(String artPackKey, ArtPack artPack) {
+        synchronized (sArtPacks) {
+            sArtPacks.put(artPackKey, artPack);
+        }
+        // Built again with the new pack on next use
+        sInstance = null;
+    }
+
+    /**
+     * Removes an art pack registered with {@link #registerArtPack}.
+     */
+    public static void unregisterArtPack(String artPackKey) {
+        synchronized (sArtPacks) {
+            sArtPacks.remove(artPackKey);
+        }
+        sInstance = null;
+    }
+
+    /**
+     * Resolves the art URLs again on next use, e.g. after the images of a pack were downloaded.
+     */
+    static void invalidate() {
+        sInstance = null;
+    }
+
+    static ArtPack getArtPack(String artPackKey) {
+        synchronized (sArtPacks) {
+            ArtPack artPack = sArtPacks.get(artPackKey);
+            return null != artPack ? artPack : new UrlFormatArtPack(artPackKey);
+        }
+    }
+
+    /**
+     * @return the names of all the art of a pack, each once.
+     */
+    static Set<String> getArtNames() {
+        return new LinkedHashSet<>(Arrays.asList(GROUP_ART_NAMES));
+    }
+
+    private static int getGroup(int weatherId) {
+        return weatherId >= 0 && weatherId < ID_COUNT ? GROUPS[weatherId] : NO_GROUP;
+    }
+
+    /**
+     * @return resource id of the small icon of the condition, -1 if there is none.
+     */
+    public static int getIconResource(int weatherId) {
+        int group = getGroup(weatherId);
+        return NO_GROUP != group ? GROUP_ICONS[group] : -1;
+    }
+
+    /**
+     * @return resource id of the large art of the condition, -1 if there is none.
+     */
+    public static int getArtResource(int weatherId) {
+        int group = getGroup(weatherId);
+        return NO_GROUP != group ? GROUP_ART[group] : -1;
+    }
+
+    /**
+     * @return URL of a photo of the condition for Muzei, null if there is none.
+     */
+    public static String getImageUrl(int weatherId) {
+        int group = getGroup(weatherId);
+        return NO_GROUP != group ? GROUP_IMAGE_URLS[group] : null;
+    }
+
+    /**
+     * @return URL of the art of the condition in the art pack, null if there is none.
+     */
+    public String getArtUrl(int weatherId) {
+        int group = getGroup(weatherId);
+        return NO_GROUP != group ? mArtUrls[group] : null;
+    }
+
+    /**
+     * @return the localized name of the condition, or "Unknown" with the id.
+     */
+    public String getLabel(int weatherId) {
+        String label = weatherId >= 0 && weatherId < ID_COUNT ? mLabels[weatherId] : null;
+        return null != label ? label : String.format(mLocale, mUnknownLabelFormat, weatherId);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * Formats temperatures and winds for the preferred units and the default locale.
+ *
+ * Both are shown rounded to whole degrees and whole km/h or mph, so the strings of the values
+ * that occur on Earth are kept in tables and each is formatted only the first time it is
+ * needed.  {@link #get(Context)} returns a new formatter when the units or the locale change.
+ */
+public final class WeatherFormatter {
+
+    // In the preferred units, anything outside is formatted on every call
+    private static final int MIN_TEMPERATURE = -100;
+    private static final int MAX_TEMPERATURE = 150;
+    private static final int MAX_WIND_SPEED = 250;
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    // From wind direction in degrees, determine compass direction as a string (e.g NW)
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+    private static final String UNKNOWN_DIRECTION = "Unknown";
+
+    private static volatile WeatherFormatter sInstance;
+
+    private final boolean mMetric;
+    private final Locale mLocale;
+    private final String mTemperatureFormat;
+    private final String mWindFormat;
+    // Filled as they are needed, the strings are immutable so racing threads do no harm
+    private final String[] mTemperatures = new String[MAX_TEMPERATURE - MIN_TEMPERATURE + 1];
+    private final String[][] mWinds = new String[DIRECTIONS.length + 1][MAX_WIND_SPEED + 1];
+    private final String mNegativeZero;
+
+    // Package-private so that tests can format in either units
+    WeatherFormatter(Context context, boolean metric, Locale locale) {
+        mMetric = metric;
+        mLocale = locale;
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindFormat = context.getString(metric
+                ? R.string.format_wind_kmh : R.string.format_wind_mph);
+        // Temperatures just below zero are shown as "-0", as they always were
+        mNegativeZero = String.format(locale, mTemperatureFormat, -0.1);
+    }
+
+    /**
+     * Returns the formatter for the current units and locale.
+     */
+    public static WeatherFormatter get(Context context) {
+        boolean metric = SunshineSettings.get(context).metric;
+        Locale locale = Locale.getDefault();
+        WeatherFormatter formatter = sInstance;
+        if (null == formatter || formatter.mMetric != metric || !formatter.mLocale.equals(locale)) {
+            formatter = new WeatherFormatter(context.getApplicationContext(), metric, locale);
+            sInstance = formatter;
+        }
+        return formatter;
+    }
+
+    /**
+     * @param temperature in Celsius, as stored in the database
+     * @return the temperature in the preferred units, e.g. "21°"
+     */
+    public String formatTemperature(double temperature) {
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        if (!mMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        if (Double.isNaN(temperature)) {
+            return String.format(mLocale, mTemperatureFormat, temperature);
+        }
+        // For presentation, assume the user doesn't care about tenths of a degree.  Rounding
+        // the magnitude rounds halves away from zero, as the format does.
+        long rounded = Math.round(Math.abs(temperature));
+        // The sign bit rather than < 0, as the format shows -0.0 as "-0" too
+        if (Math.copySign(1.0, temperature) < 0) {
+            if (0 == rounded) {
+                return mNegativeZero;
+            }
+            rounded = -rounded;
+        }
+        if (rounded < MIN_TEMPERATURE || rounded > MAX_TEMPERATURE) {
+            return String.format(mLocale, mTemperatureFormat, temperature);
+        }
+        int index = (int) rounded - MIN_TEMPERATURE;
+        String text = mTemperatures[index];
+        if (null == text) {
+            text = String.format(mLocale, mTemperatureFormat, (double) rounded);
+            mTemperatures[index] = text;
+        }
+        return text;
+    }
+
+    /**
+     * @param windSpeed in km/h, as stored in the database
+     * @param degrees the direction the wind comes from
+     * @return the speed in the preferred units and the compass direction, e.g. "4 km/h NW"
+     */
+    public String formatWind(float windSpeed, float degrees) {
+        if (!mMetric) {
+            windSpeed = KMH_TO_MPH * windSpeed;
+        }
+
+        int direction = getDirection(degrees);
+        long rounded = Math.round((double) windSpeed);
+        // Negative speeds, -0 included, are left to the format
+        if (Math.copySign(1f, windSpeed) < 0 || rounded > MAX_WIND_SPEED
+                || Float.isNaN(windSpeed)) {
+            return String.format(mLocale, mWindFormat, windSpeed, getDirectionName(direction));
+        }
+        String text = mWinds[direction][(int) rounded];
+        if (null == text) {
+            text = String.format(mLocale, mWindFormat, (double) rounded,
+                    getDirectionName(direction));
+            mWinds[direction][(int) rounded] = text;
+        }
+        return text;
+    }
+
+    // The index of the compass direction, DIRECTIONS.length if there is none
+    private static int getDirection(float degrees) {
+        if (Float.isNaN(degrees)) {
+            return DIRECTIONS.length;
+        } else if (degrees >= 337.5 || degrees < 22.5) {
+            return 0;
+        }
+        // In doubles, where adding 22.5 can't round a float just below a boundary onto it
+        return (int) ((degrees + 22.5) / 45);
+    }
+
+    private static String getDirectionName(int direction) {
+        return direction < DIRECTIONS.length ? DIRECTIONS[direction] : UNKNOWN_DIRECTION;
+    }
+}
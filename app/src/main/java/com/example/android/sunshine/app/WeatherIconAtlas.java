@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws the weather icons and art from two strips that the build stitches together out of the
+ * drawables (see gradle/weather-atlas.gradle), so that a list showing every condition decodes
+ * and uploads two bitmaps instead of one per condition.  Each strip is decoded the first time
+ * one of its cells is asked for, unless {@link #preload()} decoded it in the background.
+ *
+ * Widgets still pass the resource ids of the drawables, which the launcher decodes in its own
+ * process.
+ */
+public final class WeatherIconAtlas {
+
+    // In the order of the cells, which is the order of the lists in weather-atlas.gradle
+    static final int[] ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy,
+    };
+    static final int[] ART = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds,
+    };
+
+    private static volatile WeatherIconAtlas sInstance;
+
+    private final int mDensityDpi;
+    private final Strip mIcons;
+    private final Strip mArt;
+
+    private WeatherIconAtlas(Resources resources) {
+        mDensityDpi = resources.getDisplayMetrics().densityDpi;
+        mIcons = new Strip(resources, R.drawable.weather_icon_atlas, ICONS.length);
+        mArt = new Strip(resources, R.drawable.weather_art_atlas, ART.length);
+    }
+
+    /**
+     * Returns the atlas for the density of the screen.
+     */
+    public static WeatherIconAtlas get(Context context) {
+        Resources resources = context.getResources();
+        WeatherIconAtlas atlas = sInstance;
+        if (null == atlas || atlas.mDensityDpi != resources.getDisplayMetrics().densityDpi) {
+            // Two threads may both create it, the second one simply wins
+            atlas = new WeatherIconAtlas(context.getApplicationContext().getResources());
+            sInstance = atlas;
+        }
+        return atlas;
+    }
+
+    /**
+     * Decodes both strips on the calling thread, so that the first views drawing the weather
+     * don't decode them on the main thread.
+     */
+    public void preload() {
+        mIcons.getBitmap();
+        mArt.getBitmap();
+    }
+
+    /**
+     * Returns the cell of the art resource in the art strip, -1 if it isn't in it.  The watch
+     * face has the same strip, so the cell is all it needs to draw the art.
+     */
+    public static int getArtCell(int artResourceId) {
+        return indexOf(ART, artResourceId);
+    }
+
+    /**
+     * Returns a drawable that draws the icon or art resource from the atlas, null if it isn't
+     * in the atlas.  Like any drawable, it may only be shown by one view at a time.
+     */
+    public Drawable getDrawable(int resourceId) {
+        int cell = indexOf(ICONS, resourceId);
+        if (-1 != cell) {
+            return new CellDrawable(mIcons, cell);
+        }
+        cell = indexOf(ART, resourceId);
+        return -1 != cell ? new CellDrawable(mArt, cell) : null;
+    }
+
+    private static int indexOf(int[] resourceIds, int resourceId) {
+        for (int i = 0; i < resourceIds.length; i++) {
+            if (resourceIds[i] == resourceId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Strip {
+        private final Resources mResources;
+        private final int mResourceId;
+        final int mCellCount;
+        private volatile Bitmap mBitmap;
+
+        Strip(Resources resources, int resourceId, int cellCount) {
+            mResources = resources;
+            mResourceId = resourceId;
+            mCellCount = cellCount;
+        }
+
+        Bitmap getBitmap() {
+            Bitmap bitmap = mBitmap;
+            if (null == bitmap) {
+                // Decoded at the density of the screen, as the drawables would be.  Two threads
+                // may both decode it, the second one simply wins.
+                bitmap = BitmapFactory.decodeResource(mResources, mResourceId);
+                mBitmap = bitmap;
+            }
+            return bitmap;
+        }
+
+        // Scaled from another density the width may not divide evenly, so cells are rounded
+        void getCellBounds(int cell, Rect bounds) {
+            Bitmap bitmap = getBitmap();
+            int width = bitmap.getWidth();
+            bounds.set(Math.round((float) width * cell / mCellCount), 0,
+                    Math.round((float) width * (cell + 1) / mCellCount), bitmap.getHeight());
+        }
+    }
+
+    private static final class CellDrawable extends Drawable {
+        private final Strip mStrip;
+        private final Rect mCellBounds = new Rect();
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        CellDrawable(Strip strip, int cell) {
+            mStrip = strip;
+            strip.getCellBounds(cell, mCellBounds);
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(mStrip.getBitmap(), mCellBounds, getBounds(), mPaint);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return mCellBounds.width();
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return mCellBounds.height();
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            mPaint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Sends the provider's change notifications in batches.  The URIs of a burst of writes, such as
+ * a sync storing the new forecast and then removing the old days, are collected for
+ * {@link #BATCH_WINDOW_MS} and every observer is notified once.
+ *
+ * Notifying a URI also notifies the observers of everything below it, so a URI is left out of
+ * a batch that already notifies one of its ancestors.
+ */
+final class ChangeNotifier {
+
+    static final long BATCH_WINDOW_MS = 100;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashSet<Uri> mPending = new LinkedHashSet<Uri>();
+    private boolean mScheduled;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    ChangeNotifier(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    synchronized void notifyChange(Uri uri) {
+        mPending.add(uri);
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postDelayed(mFlush, BATCH_WINDOW_MS);
+        }
+    }
+
+    private void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            uris = new ArrayList<Uri>(mPending);
+            mPending.clear();
+            mScheduled = false;
+        }
+        for (Uri uri : uris) {
+            if (!hasAncestorIn(uri, uris)) {
+                mResolver.notifyChange(uri, null);
+            }
+        }
+    }
+
+    private static boolean hasAncestorIn(Uri uri, List<Uri> uris) {
+        for (Uri other : uris) {
+            if (isAncestor(other, uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the path of the descendant starts with the whole path of the ancestor.
+     * Query parameters play no part in notifications, so they are ignored.
+     */
+    static boolean isAncestor(Uri ancestor, Uri descendant) {
+        if (!ancestor.getAuthority().equals(descendant.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorPath = ancestor.getPathSegments();
+        List<String> descendantPath = descendant.getPathSegments();
+        return ancestorPath.size() < descendantPath.size()
+                && descendantPath.subList(0, ancestorPath.size()).equals(ancestorPath);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Build;
+
+/**
+ * An immutable copy of the rows of a query, which can be handed out as a new cursor any number
+ * of times without going back to the database.
+ */
+final class CursorSnapshot {
+
+    private final String[] mColumnNames;
+    private final Object[][] mRows;
+
+    private CursorSnapshot(String[] columnNames, Object[][] rows) {
+        mColumnNames = columnNames;
+        mRows = rows;
+    }
+
+    /**
+     * Reads all the rows of the cursor and closes it.
+     */
+    static CursorSnapshot of(Cursor cursor) {
+        try {
+            String[] columnNames = cursor.getColumnNames();
+            Object[][] rows = new Object[cursor.getCount()][];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                rows[i++] = readRow(cursor, columnNames.length);
+            }
+            return new CursorSnapshot(columnNames, rows);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Object[] readRow(Cursor cursor, int columnCount) {
+        Object[] row = new Object[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                row[column] = readTypedValue(cursor, column);
+            } else {
+                // Without Cursor.getType() everything is kept as a string, which MatrixCursor
+                // parses back when a number is asked for.
+                row[column] = cursor.getString(column);
+            }
+        }
+        return row;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Object readTypedValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+
+    int getCount() {
+        return mRows.length;
+    }
+
+    String[] getColumnNames() {
+        return mColumnNames.clone();
+    }
+
+    Object getValue(int row, int column) {
+        return mRows[row][column];
+    }
+
+    Cursor newCursor() {
+        MatrixCursor cursor = new MatrixCursor(mColumnNames, mRows.length);
+        for (Object[] row : mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+}
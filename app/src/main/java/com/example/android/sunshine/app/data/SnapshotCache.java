@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.support.v4.util.LruCache;
+
+import java.util.Map;
+
+/**
+ * A bounded cache of query results, tagged with the location they were read for so that a write
+ * only drops the results of the location it touched.  The results must not be modified once
+ * they are cached.
+ *
+ * A result read while a write was being committed could already be stale, so
+ * {@link #put(String, long, Object, long)} takes the generation that was current before the
+ * query ran and drops the result if anything has been invalidated since.
+ */
+final class SnapshotCache<T> {
+
+    // Results that don't belong to a single location, dropped by every invalidation
+    static final long ANY_LOCATION = -1;
+
+    private static final class Entry<T> {
+        final long locationId;
+        final T snapshot;
+
+        Entry(long locationId, T snapshot) {
+            this.locationId = locationId;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final LruCache<String, Entry<T>> mEntries;
+    private long mGeneration;
+
+    SnapshotCache(int maxEntries) {
+        mEntries = new LruCache<String, Entry<T>>(maxEntries);
+    }
+
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    T get(String key) {
+        Entry<T> entry = mEntries.get(key);
+        return entry != null ? entry.snapshot : null;
+    }
+
+    int hitCount() {
+        return mEntries.hitCount();
+    }
+
+    int missCount() {
+        return mEntries.missCount();
+    }
+
+    synchronized void put(String key, long locationId, T snapshot, long generation) {
+        if (generation == mGeneration) {
+            mEntries.put(key, new Entry<T>(locationId, snapshot));
+        }
+    }
+
+    synchronized void invalidateLocation(long locationId) {
+        mGeneration++;
+        for (Map.Entry<String, Entry<T>> entry : mEntries.snapshot().entrySet()) {
+            long cachedLocationId = entry.getValue().locationId;
+            if (cachedLocationId == locationId || cachedLocationId == ANY_LOCATION) {
+                mEntries.remove(entry.getKey());
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.evictAll();
+    }
+}
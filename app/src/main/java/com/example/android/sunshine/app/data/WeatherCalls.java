@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherProjections.Range;
+import com.example.android.sunshine.app.data.WeatherProjections.Today;
+
+/**
+ * Reads today's weather, or the next few days of it, through {@link WeatherProvider#call}.
+ * Consumers that only need a handful of values get them in a Bundle, without a cursor window
+ * or a query of their own.  ContentResolver.call() was added in Honeycomb, so on older releases
+ * the same Bundles are built from a regular query.
+ *
+ * The Bundle of {@link #getToday} holds the values of the {@link Today} projection, keyed by
+ * column name.  The Bundle of {@link #getRange} holds one array per column of the {@link Range}
+ * projection, also keyed by column name, with one element per day in date order.
+ */
+public final class WeatherCalls {
+
+    private WeatherCalls() {
+    }
+
+    /**
+     * Returns today's weather for the location, or null if there is none.
+     */
+    public static Bundle getToday(ContentResolver resolver, String locationSetting) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return call(resolver, WeatherContract.METHOD_GET_TODAY, locationSetting, null);
+        }
+        Cursor cursor = resolver.query(CurrentEntry.buildCurrentUri(locationSetting),
+                Today.COLUMNS, null, null, null);
+        return cursor != null ? todayFromCursor(cursor) : null;
+    }
+
+    /**
+     * Returns the weather of up to the given number of days for the location, starting today.
+     * The arrays are empty if there is no weather for the location.
+     */
+    public static Bundle getRange(ContentResolver resolver, String locationSetting, int days) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle extras = new Bundle();
+            extras.putInt(WeatherContract.EXTRA_DAYS, days);
+            return call(resolver, WeatherContract.METHOD_GET_RANGE, locationSetting, extras);
+        }
+        Cursor cursor = resolver.query(buildRangeUri(locationSetting, days),
+                Range.COLUMNS, null, null, null);
+        return cursor != null ? rangeFromCursor(cursor) : null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Bundle call(ContentResolver resolver, String method, String arg,
+                               Bundle extras) {
+        return resolver.call(WeatherContract.BASE_CONTENT_URI, method, arg, extras);
+    }
+
+    static Uri buildRangeUri(String locationSetting, int days) {
+        return WeatherEntry.buildWeatherWithLimit(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()), days);
+    }
+
+    /**
+     * Returns a copy of a Bundle of {@link #getToday} or {@link #getRange} that shares nothing
+     * mutable with it.  Strings and boxed values are immutable, only the arrays are copied.
+     */
+    static Bundle copyOf(Bundle bundle) {
+        Bundle copy = new Bundle(bundle);
+        for (String key : bundle.keySet()) {
+            Object value = bundle.get(key);
+            if (value instanceof long[]) {
+                copy.putLongArray(key, ((long[]) value).clone());
+            } else if (value instanceof int[]) {
+                copy.putIntArray(key, ((int[]) value).clone());
+            } else if (value instanceof double[]) {
+                copy.putDoubleArray(key, ((double[]) value).clone());
+            } else if (value instanceof String[]) {
+                copy.putStringArray(key, ((String[]) value).clone());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Reads the first row of a {@link Today} cursor and closes it.
+     */
+    static Bundle todayFromCursor(Cursor cursor) {
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Bundle today = new Bundle();
+            today.putLong(CurrentEntry.COLUMN_DATE, cursor.getLong(Today.COL_DATE));
+            today.putInt(CurrentEntry.COLUMN_WEATHER_ID, cursor.getInt(Today.COL_WEATHER_ID));
+            today.putString(CurrentEntry.COLUMN_SHORT_DESC,
+                    cursor.getString(Today.COL_SHORT_DESC));
+            today.putDouble(CurrentEntry.COLUMN_MAX_TEMP, cursor.getDouble(Today.COL_MAX_TEMP));
+            today.putDouble(CurrentEntry.COLUMN_MIN_TEMP, cursor.getDouble(Today.COL_MIN_TEMP));
+            return today;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads all the rows of a {@link Range} cursor into arrays and closes it.
+     */
+    static Bundle rangeFromCursor(Cursor cursor) {
+        try {
+            int count = cursor.getCount();
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            String[] descriptions = new String[count];
+            double[] maxTemps = new double[count];
+            double[] minTemps = new double[count];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                dates[i] = Range.getDate(cursor);
+                weatherIds[i] = Range.getWeatherId(cursor);
+                descriptions[i] = Range.getShortDesc(cursor);
+                maxTemps[i] = Range.getMaxTemp(cursor);
+                minTemps[i] = Range.getMinTemp(cursor);
+            }
+
+            Bundle range = new Bundle();
+            range.putLongArray(WeatherEntry.COLUMN_DATE, dates);
+            range.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, weatherIds);
+            range.putStringArray(WeatherEntry.COLUMN_SHORT_DESC, descriptions);
+            range.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, maxTemps);
+            range.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, minTemps);
+            return range;
+        } finally {
+            cursor.close();
+        }
+    }
+}
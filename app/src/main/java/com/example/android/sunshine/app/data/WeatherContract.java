@@ -43,6 +43,22 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_CURRENT = "current";
+
+    // Methods of WeatherProvider.call(), see WeatherCalls.  Their argument is a location
+    // setting, and the number of days of a range is passed in the extras.
+    public static final String METHOD_GET_TODAY = "getToday";
+    public static final String METHOD_GET_RANGE = "getRange";
+    public static final String EXTRA_DAYS = "days";
+
+    // Reports how often the provider's query and call() caches were hit or missed since the
+    // provider started, as ints keyed by the EXTRA_*_CACHE_* names.
+    public static final String METHOD_GET_CACHE_STATS = "getCacheStats";
+    public static final String EXTRA_QUERY_CACHE_HITS = "query_cache_hits";
+    public static final String EXTRA_QUERY_CACHE_MISSES = "query_cache_misses";
+    public static final String EXTRA_CALL_CACHE_HITS = "call_cache_hits";
+    public static final String EXTRA_CALL_CACHE_MISSES = "call_cache_misses";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -126,6 +142,14 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters that narrow down a weather URI for a location.  The start date uses
+        // COLUMN_DATE as its parameter name.  Dates are inclusive, except for the "after" date
+        // which is exclusive: it is the date of the last row of the previous page, so that long
+        // histories can be read page by page (in ascending date order) with a limit.
+        public static final String PARAM_END_DATE = "end_date";
+        public static final String PARAM_AFTER_DATE = "after";
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -144,17 +168,66 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        public static Uri buildWeatherLocationWithDateRange(
+                String locationSetting, long startDate, long endDate) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        /*
+            Returns a weather URI which only reads the first limit rows of the given one.
+         */
+        public static Uri buildWeatherWithLimit(Uri weatherUri, int limit) {
+            return weatherUri.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /*
+            Returns a weather URI for the page following the row dated afterDate.
+         */
+        public static Uri buildWeatherAfterDate(Uri weatherUri, long afterDate) {
+            return weatherUri.buildUpon()
+                    .appendQueryParameter(PARAM_AFTER_DATE, Long.toString(afterDate)).build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /*
+            The weather for a location can also be addressed by the numeric location id, e.g.
+            content://com.example.android.sunshine.app/location/3/weather.  These URIs are
+            answered straight from the weather table, without looking up the location setting.
+         */
+        public static Uri buildWeatherLocationId(long locationId) {
+            return LocationEntry.buildLocationUri(locationId).buildUpon()
+                    .appendPath(PATH_WEATHER).build();
+        }
+
+        public static Uri buildWeatherLocationIdWithStartDate(long locationId, long startDate) {
+            long normalizedDate = normalizeDate(startDate);
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
+        }
+
+        public static Uri buildWeatherLocationIdWithDate(long locationId, long date) {
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendPath(Long.toString(normalizeDate(date))).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
 
+        public static long getLocationIdFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(1));
+        }
+
+        // The date is the last path segment of both location setting and location id URIs
         public static long getDateFromUri(Uri uri) {
-            return Long.parseLong(uri.getPathSegments().get(2));
+            return Long.parseLong(uri.getLastPathSegment());
         }
 
         public static long getStartDateFromUri(Uri uri) {
@@ -164,5 +237,143 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the current weather table.  It holds one
+        row per location: a copy of the weather row for today (or the first day after it), kept
+        up to date by the provider in the same transaction as every weather write.  The columns
+        are the ones of the weather table.
+     */
+    public static final class CurrentEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CURRENT).build();
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CURRENT;
+
+        public static final String TABLE_NAME = "current_weather";
+
+        // The location is the primary key of the table
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        public static Uri buildCurrentUri(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /*
+        Inner class that defines the aggregate weather statistics of a location.  There is no
+        table behind it: every row summarizes the weather rows of one period (an ISO week, a
+        month or a season) and is computed by SQLite when it is queried.
+     */
+    public static final class StatsEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_STATS).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        // The periods the weather can be grouped by.  Seasons are the meteorological ones, so
+        // December belongs to the winter of the following year.
+        public static final String PERIOD_WEEK = "week";
+        public static final String PERIOD_MONTH = "month";
+        public static final String PERIOD_SEASON = "season";
+
+        // The period a row summarizes, as an integer that sorts chronologically:
+        // year * 100 + ISO week for weeks (201451), year * 100 + month for months (201412) and
+        // year * 10 + season for seasons, 0 being December to February (20150).
+        public static final String COLUMN_PERIOD = "period";
+
+        // First and last date with weather in the period, and the number of days with weather
+        public static final String COLUMN_START_DATE = "start_date";
+        public static final String COLUMN_END_DATE = "end_date";
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest minimum and highest maximum of the period, and the average of the daily means
+        public static final String COLUMN_MIN_TEMP = "min_temp";
+        public static final String COLUMN_MAX_TEMP = "max_temp";
+        public static final String COLUMN_AVG_TEMP = "avg_temp";
+
+        public static final String COLUMN_MIN_HUMIDITY = "min_humidity";
+        public static final String COLUMN_MAX_HUMIDITY = "max_humidity";
+        public static final String COLUMN_AVG_HUMIDITY = "avg_humidity";
+
+        public static final String COLUMN_MIN_WIND_SPEED = "min_wind";
+        public static final String COLUMN_MAX_WIND_SPEED = "max_wind";
+        public static final String COLUMN_AVG_WIND_SPEED = "avg_wind";
+
+        /*
+            The parent of the statistics URIs of a location.  It can't be queried, but observers
+            registered on it (or the change notifications sent to it) cover all the periods.
+         */
+        public static Uri buildStatsLocationUri(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildStatsUri(String locationSetting, String period) {
+            return buildStatsLocationUri(locationSetting).buildUpon().appendPath(period).build();
+        }
+
+        /*
+            Restricts the statistics to the weather between two dates (both inclusive), using
+            the same query parameters as the weather URIs.
+         */
+        public static Uri buildStatsUriWithDateRange(String locationSetting, String period,
+                                                     long startDate, long endDate) {
+            return buildStatsUri(locationSetting, period).buildUpon()
+                    .appendQueryParameter(WeatherEntry.COLUMN_DATE,
+                            Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(WeatherEntry.PARAM_END_DATE,
+                            Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getPeriodFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
     }
 }
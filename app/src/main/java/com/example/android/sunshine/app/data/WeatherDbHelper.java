@@ -16,9 +16,13 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 
+import com.example.android.sunshine.app.data.WeatherContract.CurrentEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -28,34 +32,72 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Secondary index used by the rowid layout so that location + date range reads don't have
+    // to walk the whole table.  It also carries the columns the statistics aggregate, so that
+    // those are computed from the index alone.  The clustered layout doesn't need it: its
+    // primary key already stores the whole rows in (location_id, date) order.
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date_idx";
+
+    // WITHOUT ROWID tables were added in SQLite 3.8.2, which first shipped with Lollipop.
+    private static final int[] MIN_CLUSTERED_SQLITE_VERSION = {3, 8, 2};
+
+    private volatile boolean mClusteredLayout;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
-    @Override
-    public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
-        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
-                LocationEntry._ID + " INTEGER PRIMARY KEY," +
-                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
-                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
-                " );";
+    /**
+     * Whether the open database uses the clustered weather table.  Only valid once the database
+     * has been opened through {@link #getReadableDatabase()} or {@link #getWritableDatabase()}.
+     */
+    boolean usesClusteredLayout() {
+        return mClusteredLayout;
+    }
 
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+    /**
+     * Returns true if the weather table of this database is clustered on (location_id, date),
+     * false if it is the original AUTOINCREMENT rowid table.
+     */
+    static boolean isClusteredLayout(SQLiteDatabase db) {
+        String sql = DatabaseUtils.stringForQuery(db,
+                "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{WeatherEntry.TABLE_NAME});
+        return sql != null && sql.toUpperCase().contains("WITHOUT ROWID");
+    }
+
+    /**
+     * Returns true if the SQLite library behind this database understands WITHOUT ROWID tables.
+     */
+    static boolean supportsClusteredLayout(SQLiteDatabase db) {
+        String version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null);
+        String[] parts = version.split("\\.");
+        for (int i = 0; i < MIN_CLUSTERED_SQLITE_VERSION.length; i++) {
+            int part = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+            if (part != MIN_CLUSTERED_SQLITE_VERSION[i]) {
+                return part > MIN_CLUSTERED_SQLITE_VERSION[i];
+            }
+        }
+        return true;
+    }
 
+    /**
+     * Creates the weather table.
+     *
+     * The clustered layout is a WITHOUT ROWID table whose primary key is (location_id, date), so
+     * the rows for a location are stored next to each other in date order and a forecast read is
+     * a single range scan of the b-tree.  Its _id column is not generated by SQLite: the
+     * provider fills it in with {@link #clusteredWeatherId(long, long)}.
+     *
+     * The rowid layout is the original AUTOINCREMENT table, plus an index whose column order
+     * matches the way the provider reads the data and which covers the statistics queries.
+     */
+    static void createWeatherTable(SQLiteDatabase sqLiteDatabase, boolean clustered) {
+        final String columns =
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
@@ -72,15 +114,166 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), ";
+
+        if (clustered) {
+            sqLiteDatabase.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry._ID + " INTEGER, " +
+                    columns +
+
+                    // One weather entry per day per location, replacing the old one on conflict,
+                    // exactly like the UNIQUE constraint of the rowid layout.
+                    " PRIMARY KEY (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE) WITHOUT ROWID;");
+        } else {
+            sqLiteDatabase.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                    // Why AutoIncrement here, and not above?
+                    // Unique keys will be auto-generated in either case.  But for weather
+                    // forecasting, it's reasonable to assume the user will want information
+                    // for a certain date and all dates *following*, so the forecast data
+                    // should be sorted accordingly.
+                    WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    columns +
+
+                    // To assure the application have just one weather entry per day
+                    // per location, it's created a UNIQUE constraint with REPLACE strategy
+                    " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
+            sqLiteDatabase.execSQL("CREATE INDEX " + WEATHER_LOCATION_DATE_INDEX + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherEntry.COLUMN_WIND_SPEED + ");");
+        }
+    }
+
+    /**
+     * The _id of a row in the clustered weather table.  It is derived from the primary key, so
+     * it is stable across syncs (a re-downloaded day keeps its id) and unique per location/day.
+     */
+    static long clusteredWeatherId(long locationId, long normalizedDate) {
+        return locationId * 1000000L + normalizedDate / (1000L * 60 * 60 * 24);
+    }
 
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+    static final long ALL_LOCATIONS = -1;
 
+    // The columns copied from the weather table into the current weather table
+    static final String[] CURRENT_WEATHER_PROJECTION = {
+            CurrentEntry.COLUMN_LOC_KEY,
+            CurrentEntry.COLUMN_DATE,
+            CurrentEntry.COLUMN_WEATHER_ID,
+            CurrentEntry.COLUMN_SHORT_DESC,
+            CurrentEntry.COLUMN_MIN_TEMP,
+            CurrentEntry.COLUMN_MAX_TEMP,
+            CurrentEntry.COLUMN_HUMIDITY,
+            CurrentEntry.COLUMN_PRESSURE,
+            CurrentEntry.COLUMN_WIND_SPEED,
+            CurrentEntry.COLUMN_DEGREES
+    };
+    private static final String CURRENT_WEATHER_COLUMNS =
+            TextUtils.join(", ", CURRENT_WEATHER_PROJECTION);
+
+    /**
+     * Creates the current weather table.  Its location column is an alias for the rowid, so
+     * reading the current weather of a location is a single primary key lookup.
+     */
+    static void createCurrentWeatherTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE TABLE " + CurrentEntry.TABLE_NAME + " (" +
+                CurrentEntry.COLUMN_LOC_KEY + " INTEGER PRIMARY KEY, " +
+                CurrentEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                CurrentEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                CurrentEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                CurrentEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                " FOREIGN KEY (" + CurrentEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));");
+    }
+
+    /**
+     * Copies the first weather row on or after today into the current weather table, for one
+     * location or, with {@link #ALL_LOCATIONS}, for all of them.  Locations without such a row lose
+     * their current weather.  Meant to run in the transaction of the weather write it follows.
+     */
+    static void refreshCurrentWeather(SQLiteDatabase db, long locationId, long today) {
+        if (locationId == ALL_LOCATIONS) {
+            db.delete(CurrentEntry.TABLE_NAME, null, null);
+            Cursor locations = db.query(LocationEntry.TABLE_NAME,
+                    new String[]{LocationEntry._ID}, null, null, null, null, null);
+            try {
+                while (locations.moveToNext()) {
+                    copyCurrentWeather(db, locations.getLong(0), today);
+                }
+            } finally {
+                locations.close();
+            }
+        } else {
+            db.delete(CurrentEntry.TABLE_NAME, CurrentEntry.COLUMN_LOC_KEY + " = ?",
+                    new String[]{Long.toString(locationId)});
+            copyCurrentWeather(db, locationId, today);
+        }
+    }
+
+    /**
+     * Refreshes the current weather of the locations whose current day has ended.  Meant to run
+     * in the transaction of a weather write.
+     */
+    static void refreshStaleCurrentWeather(SQLiteDatabase db, long today) {
+        Cursor stale = db.query(CurrentEntry.TABLE_NAME,
+                new String[]{CurrentEntry.COLUMN_LOC_KEY},
+                CurrentEntry.COLUMN_DATE + " < ?", new String[]{Long.toString(today)},
+                null, null, null);
+        try {
+            while (stale.moveToNext()) {
+                refreshCurrentWeather(db, stale.getLong(0), today);
+            }
+        } finally {
+            stale.close();
+        }
+    }
+
+    private static void copyCurrentWeather(SQLiteDatabase db, long locationId, long today) {
+        // Two searches of the (location_id, date) key: the first day that isn't in the past,
+        // then its row
+        db.execSQL("INSERT INTO " + CurrentEntry.TABLE_NAME + " (" + CURRENT_WEATHER_COLUMNS +
+                        ") SELECT " + CURRENT_WEATHER_COLUMNS + " FROM " + WeatherEntry.TABLE_NAME +
+                        " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherEntry.COLUMN_DATE + " = (SELECT MIN(" + WeatherEntry.COLUMN_DATE +
+                        ") FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                        WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherEntry.COLUMN_DATE + " >= ?)",
+                new Object[]{locationId, locationId, today});
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        // Create a table to hold locations.  A location consists of the string supplied in the
+        // location setting, the city name, and the latitude and longitude
+        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+                LocationEntry._ID + " INTEGER PRIMARY KEY," +
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                " );";
+
+        // The location_setting lookup the provider does for every forecast read is served by the
+        // index SQLite creates for the UNIQUE constraint.  Because _id is an alias for the rowid,
+        // that index already covers the join column, so no extra location index is needed.
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
-        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createWeatherTable(sqLiteDatabase, supportsClusteredLayout(sqLiteDatabase));
+        createCurrentWeatherTable(sqLiteDatabase);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        mClusteredLayout = isClusteredLayout(db);
     }
 
     @Override
@@ -93,6 +286,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CurrentEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The projections the app queries the provider with, each next to the indices of its columns
+ * and typed accessors that read a row by those indices.  Every consumer of the same data shares
+ * one projection, so a column is never looked up by name on a row, and a projection only has to
+ * change in one place.
+ *
+ * None of the weather projections have location columns, which lets {@link WeatherProvider}
+ * answer them straight from the weather table, without a join.
+ */
+public final class WeatherProjections {
+
+    private WeatherProjections() {
+    }
+
+    /**
+     * The days of the forecast list and of the detail widget.
+     */
+    public static class Forecast {
+        public static final String[] COLUMNS = {
+                // The id is still fully qualified with a table name, so that the projection
+                // stays valid if it ever needs columns from the location table again (both have
+                // an _id column)
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_MIN_TEMP
+        };
+
+        // These indices are tied to COLUMNS.  If COLUMNS changes, these must change.
+        public static final int COL_ID = 0;
+        public static final int COL_DATE = 1;
+        public static final int COL_WEATHER_ID = 2;
+        public static final int COL_SHORT_DESC = 3;
+        public static final int COL_MAX_TEMP = 4;
+        public static final int COL_MIN_TEMP = 5;
+
+        private Forecast() {
+        }
+
+        public static long getId(Cursor cursor) {
+            return cursor.getLong(COL_ID);
+        }
+
+        public static long getDate(Cursor cursor) {
+            return cursor.getLong(COL_DATE);
+        }
+
+        public static int getWeatherId(Cursor cursor) {
+            return cursor.getInt(COL_WEATHER_ID);
+        }
+
+        public static String getShortDesc(Cursor cursor) {
+            return cursor.getString(COL_SHORT_DESC);
+        }
+
+        public static double getMaxTemp(Cursor cursor) {
+            return cursor.getDouble(COL_MAX_TEMP);
+        }
+
+        public static double getMinTemp(Cursor cursor) {
+            return cursor.getDouble(COL_MIN_TEMP);
+        }
+    }
+
+    /**
+     * One day in full, for the detail view.  The columns of {@link Forecast} come first, so
+     * its accessors read these rows as well.
+     */
+    public static final class Detail extends Forecast {
+        public static final String[] COLUMNS = {
+                Forecast.COLUMNS[COL_ID],
+                Forecast.COLUMNS[COL_DATE],
+                Forecast.COLUMNS[COL_WEATHER_ID],
+                Forecast.COLUMNS[COL_SHORT_DESC],
+                Forecast.COLUMNS[COL_MAX_TEMP],
+                Forecast.COLUMNS[COL_MIN_TEMP],
+                WeatherEntry.COLUMN_HUMIDITY,
+                WeatherEntry.COLUMN_PRESSURE,
+                WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherEntry.COLUMN_DEGREES
+        };
+
+        public static final int COL_HUMIDITY = 6;
+        public static final int COL_PRESSURE = 7;
+        public static final int COL_WIND_SPEED = 8;
+        public static final int COL_DEGREES = 9;
+
+        private Detail() {
+        }
+
+        public static float getHumidity(Cursor cursor) {
+            return cursor.getFloat(COL_HUMIDITY);
+        }
+
+        public static float getPressure(Cursor cursor) {
+            return cursor.getFloat(COL_PRESSURE);
+        }
+
+        public static float getWindSpeed(Cursor cursor) {
+            return cursor.getFloat(COL_WIND_SPEED);
+        }
+
+        public static float getDegrees(Cursor cursor) {
+            return cursor.getFloat(COL_DEGREES);
+        }
+    }
+
+    /**
+     * Today's weather, from the current weather table, as {@link WeatherCalls#getToday} reads
+     * it.  Its Bundle holds the same values keyed by column name, which the Bundle accessors
+     * read.
+     */
+    public static final class Today {
+        public static final String[] COLUMNS = {
+                CurrentEntry.COLUMN_DATE,
+                CurrentEntry.COLUMN_WEATHER_ID,
+                CurrentEntry.COLUMN_SHORT_DESC,
+                CurrentEntry.COLUMN_MAX_TEMP,
+                CurrentEntry.COLUMN_MIN_TEMP
+        };
+
+        // These indices are tied to COLUMNS.  If COLUMNS changes, these must change.
+        public static final int COL_DATE = 0;
+        public static final int COL_WEATHER_ID = 1;
+        public static final int COL_SHORT_DESC = 2;
+        public static final int COL_MAX_TEMP = 3;
+        public static final int COL_MIN_TEMP = 4;
+
+        private Today() {
+        }
+
+        public static long getDate(Bundle today) {
+            return today.getLong(CurrentEntry.COLUMN_DATE);
+        }
+
+        public static int getWeatherId(Bundle today) {
+            return today.getInt(CurrentEntry.COLUMN_WEATHER_ID);
+        }
+
+        public static String getShortDesc(Bundle today) {
+            return today.getString(CurrentEntry.COLUMN_SHORT_DESC);
+        }
+
+        public static double getMaxTemp(Bundle today) {
+            return today.getDouble(CurrentEntry.COLUMN_MAX_TEMP);
+        }
+
+        public static double getMinTemp(Bundle today) {
+            return today.getDouble(CurrentEntry.COLUMN_MIN_TEMP);
+        }
+    }
+
+    /**
+     * The next few days, from the weather table, as {@link WeatherCalls#getRange} reads them.
+     * Its Bundle holds one array per column, keyed by column name, which the Bundle accessors
+     * read.
+     */
+    public static final class Range {
+        public static final String[] COLUMNS = {
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_MIN_TEMP
+        };
+
+        // These indices are tied to COLUMNS.  If COLUMNS changes, these must change.
+        public static final int COL_DATE = 0;
+        public static final int COL_WEATHER_ID = 1;
+        public static final int COL_SHORT_DESC = 2;
+        public static final int COL_MAX_TEMP = 3;
+        public static final int COL_MIN_TEMP = 4;
+
+        private Range() {
+        }
+
+        public static long getDate(Cursor cursor) {
+            return cursor.getLong(COL_DATE);
+        }
+
+        public static int getWeatherId(Cursor cursor) {
+            return cursor.getInt(COL_WEATHER_ID);
+        }
+
+        public static String getShortDesc(Cursor cursor) {
+            return cursor.getString(COL_SHORT_DESC);
+        }
+
+        public static double getMaxTemp(Cursor cursor) {
+            return cursor.getDouble(COL_MAX_TEMP);
+        }
+
+        public static double getMinTemp(Cursor cursor) {
+            return cursor.getDouble(COL_MIN_TEMP);
+        }
+
+        public static long[] getDates(Bundle range) {
+            return range.getLongArray(WeatherEntry.COLUMN_DATE);
+        }
+
+        public static int[] getWeatherIds(Bundle range) {
+            return range.getIntArray(WeatherEntry.COLUMN_WEATHER_ID);
+        }
+
+        public static String[] getShortDescs(Bundle range) {
+            return range.getStringArray(WeatherEntry.COLUMN_SHORT_DESC);
+        }
+
+        public static double[] getMaxTemps(Bundle range) {
+            return range.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP);
+        }
+
+        public static double[] getMinTemps(Bundle range) {
+            return range.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP);
+        }
+    }
+
+    /**
+     * The row id of a location, to look up the location of a setting.
+     */
+    public static final class LocationId {
+        public static final String[] COLUMNS = {
+                LocationEntry._ID
+        };
+
+        public static final int COL_ID = 0;
+
+        private LocationId() {
+        }
+
+        public static long getId(Cursor cursor) {
+            return cursor.getLong(COL_ID);
+        }
+    }
+
+    /**
+     * The coordinates of a location, to show it on a map.
+     */
+    public static final class LocationCoord {
+        public static final String[] COLUMNS = {
+                LocationEntry.COLUMN_COORD_LAT,
+                LocationEntry.COLUMN_COORD_LONG
+        };
+
+        public static final int COL_COORD_LAT = 0;
+        public static final int COL_COORD_LONG = 1;
+
+        private LocationCoord() {
+        }
+
+        // As text, the way they go into a geo URI
+        public static String getCoordLat(Cursor cursor) {
+            return cursor.getString(COL_COORD_LAT);
+        }
+
+        public static String getCoordLong(Cursor cursor) {
+            return cursor.getString(COL_COORD_LONG);
+        }
+    }
+}
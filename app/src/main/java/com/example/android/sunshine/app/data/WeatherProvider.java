@@ -21,11 +21,25 @@ import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.v4.os.TraceCompat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
@@ -33,7 +47,41 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_WITH_LOCATION_ID = 103;
+    static final int WEATHER_WITH_LOCATION_ID_AND_DATE = 104;
     static final int LOCATION = 300;
+    static final int STATS = 400;
+    static final int CURRENT_WITH_LOCATION = 500;
+
+    // Results of the weather and statistics queries for a location.  They only change when the
+    // weather of their location does, so restarted loaders (rotation, switching panes, opening
+    // the detail view) are served from memory until then.  Results larger than a forecast aren't
+    // worth holding on to and are returned straight from the database.
+    private static final int QUERY_CACHE_SIZE = 32;
+    private static final int QUERY_CACHE_MAX_ROWS = 64;
+    private final SnapshotCache<CursorSnapshot> mQueryCache =
+            new SnapshotCache<CursorSnapshot>(QUERY_CACHE_SIZE);
+
+    // Results of call(), for the few locations and ranges the app's widgets and services ask for
+    private static final int CALL_CACHE_SIZE = 8;
+    private final SnapshotCache<Bundle> mCallCache = new SnapshotCache<Bundle>(CALL_CACHE_SIZE);
+
+    private ChangeNotifier mNotifier;
+
+    // location_setting -> location._id, so that forecast reads which don't need any location
+    // columns can skip the join.  Only hits are cached, and it's cleared whenever the location
+    // table changes.  Guards the reverse map too.
+    private final HashMap<String, Long> mLocationIdCache = new HashMap<String, Long>();
+    // and the other way around, to build the setting URIs of a change
+    private final HashMap<Long, String> mLocationSettingCache = new HashMap<Long, String>();
+
+    // Columns that only the location table can provide
+    private static final String[] sLocationColumns = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -56,48 +104,480 @@ public class WeatherProvider extends ContentProvider {
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
-    //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
-                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
-
     //location.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+    //weather.location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //weather.location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    //current_weather.location_id = ?
+    private static final String sCurrentLocationIdSelection =
+            WeatherContract.CurrentEntry.TABLE_NAME +
+                    "." + WeatherContract.CurrentEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //current_weather.location_id = ? AND date >= ?
+    private static final String sFreshCurrentSelection =
+            sCurrentLocationIdSelection + "AND " +
+                    WeatherContract.CurrentEntry.COLUMN_DATE + " >= ? ";
+
+    //weather.location_id = ? AND date = (SELECT MIN(date) FROM weather WHERE location_id = ? AND date >= ?)
+    private static final String sFirstDaySelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = (SELECT MIN(" +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ") FROM " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?) ";
+
+    //AND date >= ?
+    private static final String sStartDateSelection =
+            "AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //AND date <= ?
+    private static final String sEndDateSelection =
+            "AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    //AND date > ?
+    private static final String sAfterDateSelection =
+            "AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
+    /**
+     * Adds the date window of a weather URI (start date, end date and the keyset "after" date)
+     * to a location selection.  All of them restrict the date column, so together with the
+     * location they are one range of the (location_id, date) key.
+     */
+    private static String appendDateWindow(Uri uri, String locationSelection,
+                                           ArrayList<String> selectionArgs) {
+        StringBuilder selection = new StringBuilder(locationSelection);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        if (startDate != 0) {
+            selection.append(sStartDateSelection);
+            selectionArgs.add(Long.toString(startDate));
+        }
+        long endDate = WeatherContract.WeatherEntry.getEndDateFromUri(uri);
+        if (endDate != 0) {
+            selection.append(sEndDateSelection);
+            selectionArgs.add(Long.toString(endDate));
+        }
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        if (afterDate != 0) {
+            selection.append(sAfterDateSelection);
+            selectionArgs.add(Long.toString(afterDate));
+        }
+        return selection.toString();
+    }
 
-        String[] selectionArgs;
-        String selection;
+    private static String getLimit(Uri uri) {
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+        return limit > 0 ? Integer.toString(limit) : null;
+    }
 
-        if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
-        } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+    // Pages are only well defined in date order, which is also the order of the key
+    private static String getWindowSortOrder(Uri uri, String sortOrder) {
+        if (sortOrder == null && (WeatherContract.WeatherEntry.getLimitFromUri(uri) > 0 ||
+                WeatherContract.WeatherEntry.getAfterDateFromUri(uri) != 0)) {
+            return WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
         }
+        return sortOrder;
+    }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+    /**
+     * Returns true if the projection asks for columns that only the location table has, in
+     * which case the weather query has to join on it.
+     */
+    static boolean needsLocationJoin(String[] projection) {
+        // null means all columns, which includes the location ones
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (column.startsWith(WeatherContract.LocationEntry.TABLE_NAME + ".")) {
+                return true;
+            }
+            for (String locationColumn : sLocationColumns) {
+                if (locationColumn.equals(column)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves a location setting to the _id of its row in the location table.
+     *
+     * @return the location id, or -1 if there is no such location (yet).
+     */
+    private long getLocationId(String locationSetting) {
+        synchronized (mLocationIdCache) {
+            Long locationId = mLocationIdCache.get(locationSetting);
+            if (locationId != null) {
+                return locationId;
+            }
+        }
+        long locationId = -1;
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null
+        );
+        try {
+            if (cursor.moveToFirst()) {
+                locationId = cursor.getLong(0);
+                synchronized (mLocationIdCache) {
+                    mLocationIdCache.put(locationSetting, locationId);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationId;
+    }
+
+    /**
+     * Returns the location setting of a row of the location table, or null if there is no such
+     * row.
+     */
+    private String getLocationSetting(long locationId) {
+        synchronized (mLocationIdCache) {
+            String locationSetting = mLocationSettingCache.get(locationId);
+            if (locationSetting != null) {
+                return locationSetting;
+            }
+        }
+        String locationSetting = null;
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                null
+        );
+        try {
+            if (cursor.moveToFirst()) {
+                locationSetting = cursor.getString(0);
+                synchronized (mLocationIdCache) {
+                    mLocationSettingCache.put(locationId, locationSetting);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationSetting;
+    }
+
+    private void clearLocationIdCache() {
+        synchronized (mLocationIdCache) {
+            mLocationIdCache.clear();
+            mLocationSettingCache.clear();
+        }
+    }
+
+    private Cursor getStats(Uri uri, String[] projection, String sortOrder) {
+        long locationId = getLocationId(WeatherContract.StatsEntry.getLocationSettingFromUri(uri));
+
+        ArrayList<String> selectionArgs = new ArrayList<String>();
+        selectionArgs.add(Long.toString(locationId));
+        String selection = appendDateWindow(uri, sLocationIdSelection, selectionArgs);
+
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                WeatherStats.buildQuery(WeatherContract.StatsEntry.getPeriodFromUri(uri),
+                        projection, selection, sortOrder),
+                selectionArgs.toArray(new String[selectionArgs.size()]));
+    }
+
+    /**
+     * Returns the location whose weather the result of a query depends on, for the queries whose
+     * results are cached, or null for the others.  Unknown locations are
+     * {@link SnapshotCache#ANY_LOCATION}, so that the first weather written drops them.
+     */
+    private Long getCachedQueryLocation(int match, Uri uri) {
+        switch (match) {
+            case WEATHER_WITH_LOCATION:
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return getLocationId(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+            case WEATHER_WITH_LOCATION_ID:
+            case WEATHER_WITH_LOCATION_ID_AND_DATE:
+                return WeatherContract.WeatherEntry.getLocationIdFromUri(uri);
+            case STATS:
+                return getLocationId(WeatherContract.StatsEntry.getLocationSettingFromUri(uri));
+            default:
+                return null;
+        }
+    }
+
+    private Cursor getCurrentWeather(Uri uri, String[] projection, String sortOrder) {
+        long locationId = getLocationId(
+                WeatherContract.CurrentEntry.getLocationSettingFromUri(uri));
+        String locationIdString = Long.toString(locationId);
+        String todayString = Long.toString(today());
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(WeatherContract.CurrentEntry.TABLE_NAME,
+                projection,
+                sFreshCurrentSelection,
+                new String[]{locationIdString, todayString},
+                null,
+                null,
+                sortOrder
+        );
+        if (cursor.getCount() != 0) {
+            return cursor;
+        }
+        cursor.close();
+
+        // Weather writes keep the row up to date, but the day can also end without any write.
+        // Until the next one brings the row forward, today's weather is read from the forecast.
+        return db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                projection != null ? projection : WeatherDbHelper.CURRENT_WEATHER_PROJECTION,
+                sFirstDaySelection,
+                new String[]{locationIdString, locationIdString, todayString},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private static long today() {
+        return WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    private static void addChangedDay(HashMap<Long, HashSet<Long>> changedDays,
+                                      long locationId, long date) {
+        HashSet<Long> dates = changedDays.get(locationId);
+        if (dates == null) {
+            dates = new HashSet<Long>();
+            changedDays.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    /**
+     * Adds the days of the weather rows matching a selection, before an update or a delete
+     * changes them.  For an update, the days the rows are moved to are added too.
+     */
+    private static void collectChangedDays(SQLiteDatabase db, String selection,
+                                           String[] selectionArgs, ContentValues newValues,
+                                           HashMap<Long, HashSet<Long>> changedDays) {
+        Long newLocationId = newValues != null ?
+                newValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY) : null;
+        Long newDate = newValues != null ?
+                newValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE) : null;
+
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long locationId = cursor.getLong(0);
+                long date = cursor.getLong(1);
+                addChangedDay(changedDays, locationId, date);
+                if (newLocationId != null || newDate != null) {
+                    addChangedDay(changedDays,
+                            newLocationId != null ? newLocationId : locationId,
+                            newDate != null ? newDate : date);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Returns true if the weather table holds the row exactly as given, so that writing it
+        again would change nothing.  Its _id, which a write would assign anew, is left out.
+     */
+    private static boolean isStored(SQLiteDatabase db, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            return false;
+        }
+        ArrayList<String> columns = new ArrayList<String>(values.size());
+        for (String column : values.keySet()) {
+            if (!WeatherContract.WeatherEntry._ID.equals(column)) {
+                columns.add(column);
+            }
+        }
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                columns.toArray(new String[columns.size()]),
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(locationId), Long.toString(date)},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                if (!isStoredValue(cursor, i, values.get(columns.get(i)))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Numbers are compared as the doubles a REAL column holds, anything else counts as changed
+    private static boolean isStoredValue(Cursor cursor, int column, Object value) {
+        if (value == null || cursor.isNull(column)) {
+            return value == null && cursor.isNull(column);
+        } else if (value instanceof Number) {
+            return cursor.getDouble(column) == ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            return value.equals(cursor.getString(column));
+        }
+        return false;
+    }
+
+    private static boolean hasDayFrom(Set<Long> dates, long from) {
+        for (long date : dates) {
+            if (date >= from) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refreshes the current weather of the locations whose changes could affect it, in the
+     * transaction of the write.  Changes to past days never do.
+     */
+    private static void refreshCurrentWeather(SQLiteDatabase db,
+                                              HashMap<Long, HashSet<Long>> changedDays) {
+        long today = today();
+        for (Map.Entry<Long, HashSet<Long>> entry : changedDays.entrySet()) {
+            if (hasDayFrom(entry.getValue(), today)) {
+                WeatherDbHelper.refreshCurrentWeather(db, entry.getKey(), today);
+            }
+        }
+    }
+
+    /**
+     * Drops whatever was derived from the changed weather, once the write has been committed,
+     * and notifies the observers of the changed days only.
+     */
+    private void onWeatherChanged(HashMap<Long, HashSet<Long>> changedDays) {
+        long today = today();
+        for (Map.Entry<Long, HashSet<Long>> entry : changedDays.entrySet()) {
+            long locationId = entry.getKey();
+            Set<Long> dates = entry.getValue();
+            mQueryCache.invalidateLocation(locationId);
+            mCallCache.invalidateLocation(locationId);
+            notifyWeatherChanged(locationId, dates, hasDayFrom(dates, today));
+        }
+    }
+
+    private void notifyWeatherChanged(long locationId, Set<Long> dates, boolean currentChanged) {
+        String locationSetting = getLocationSetting(locationId);
+        if (locationSetting == null) {
+            // The location is gone, so there's no telling which setting URIs show its weather
+            mNotifier.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            mNotifier.notifyChange(WeatherContract.CurrentEntry.CONTENT_URI);
+            mNotifier.notifyChange(WeatherContract.StatsEntry.CONTENT_URI);
+            return;
+        }
+
+        // A URI also notifies the observers of the URIs below it, and the observers above it
+        // which watch their descendants (like the forecast list does).  Every day is notified on
+        // its own, even for a whole sync, so that the forecast list reads back only those; the
+        // notifier sends them in one batch.
+        for (long date : dates) {
+            mNotifier.notifyChange(WeatherContract.WeatherEntry
+                    .buildWeatherLocationWithDate(locationSetting, date));
+        }
+        if (currentChanged) {
+            mNotifier.notifyChange(WeatherContract.CurrentEntry.buildCurrentUri(locationSetting));
+        }
+        mNotifier.notifyChange(WeatherContract.StatsEntry.buildStatsLocationUri(locationSetting));
+    }
+
+    private Cursor getWeatherByLocationId(long locationId, Uri uri,
+                                          String[] projection, String sortOrder) {
+        ArrayList<String> selectionArgs = new ArrayList<String>();
+        selectionArgs.add(Long.toString(locationId));
+        String selection = appendDateWindow(uri, sLocationIdSelection, selectionArgs);
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
                 projection,
                 selection,
-                selectionArgs,
+                selectionArgs.toArray(new String[selectionArgs.size()]),
+                null,
+                null,
+                getWindowSortOrder(uri, sortOrder),
+                getLimit(uri)
+        );
+    }
+
+    private Cursor getWeatherByLocationIdAndDate(long locationId, long date,
+                                                 String[] projection, String sortOrder) {
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                projection,
+                sLocationIdAndDaySelection,
+                new String[]{Long.toString(locationId), Long.toString(date)},
                 null,
                 null,
                 sortOrder
         );
     }
 
+    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+
+        if (!needsLocationJoin(projection)) {
+            return getWeatherByLocationId(getLocationId(locationSetting), uri,
+                    projection, sortOrder);
+        }
+
+        ArrayList<String> selectionArgs = new ArrayList<String>();
+        selectionArgs.add(locationSetting);
+        String selection = appendDateWindow(uri, sLocationSettingSelection, selectionArgs);
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs.toArray(new String[selectionArgs.size()]),
+                null,
+                null,
+                getWindowSortOrder(uri, sortOrder),
+                getLimit(uri)
+        );
+    }
+
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        if (!needsLocationJoin(projection)) {
+            return getWeatherByLocationIdAndDate(getLocationId(locationSetting), date,
+                    projection, sortOrder);
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -128,8 +608,14 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/#/" +
+                WeatherContract.PATH_WEATHER, WEATHER_WITH_LOCATION_ID);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/#/" +
+                WeatherContract.PATH_WEATHER + "/#", WEATHER_WITH_LOCATION_ID_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_STATS + "/*/*", STATS);
+        matcher.addURI(authority, WeatherContract.PATH_CURRENT + "/*", CURRENT_WITH_LOCATION);
         return matcher;
     }
 
@@ -140,9 +626,36 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mNotifier = new ChangeNotifier(getContext().getContentResolver());
+        openDatabaseInBackground();
         return true;
     }
 
+    /*
+        Providers are created when the process starts, before the first activity.  Opening (and
+        on first run creating or upgrading) the database from here lets that happen while the
+        activity inflates, instead of at the start of the first query.  SQLiteOpenHelper
+        serializes the opens, so a query that comes early simply waits for this one.
+     */
+    private void openDatabaseInBackground() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                TraceCompat.beginSection("WeatherDbHelper.open");
+                try {
+                    mOpenHelper.getWritableDatabase();
+                } catch (SQLiteException e) {
+                    // The first query will try again and report it
+                    Log.w(LOG_TAG, "Couldn't open the database in the background", e);
+                } finally {
+                    TraceCompat.endSection();
+                }
+            }
+        }, "WeatherDbOpen");
+        thread.start();
+    }
+
     /*
         Students: Here's where you'll code the getType function that uses the UriMatcher.  You can
         test this by uncommenting testGetType in TestProvider.
@@ -160,10 +673,18 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_WITH_LOCATION_ID_AND_DATE:
+                return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
+            case WEATHER_WITH_LOCATION_ID:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case STATS:
+                return WeatherContract.StatsEntry.CONTENT_TYPE;
+            case CURRENT_WITH_LOCATION:
+                return WeatherContract.CurrentEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -175,7 +696,27 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+
+        // The selection of these URIs comes from the URI itself, so the URI, the projection and
+        // the sort order are the whole query
+        Long cacheLocationId = getCachedQueryLocation(match, uri);
+        String cacheKey = null;
+        long cacheGeneration = 0;
+        if (cacheLocationId != null) {
+            cacheKey = match + "|" + uri + "|" +
+                    (projection == null ? "*" : TextUtils.join(",", projection)) + "|" + sortOrder;
+            CursorSnapshot cached = mQueryCache.get(cacheKey);
+            if (cached != null) {
+                retCursor = cached.newCursor();
+                retCursor.setNotificationUri(getContext().getContentResolver(),
+                        getNotificationUri(match, uri));
+                return retCursor;
+            }
+            cacheGeneration = mQueryCache.generation();
+        }
+
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
@@ -187,6 +728,21 @@ public class WeatherProvider extends ContentProvider {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
                 break;
             }
+            // "location/#/weather/#"
+            case WEATHER_WITH_LOCATION_ID_AND_DATE: {
+                retCursor = getWeatherByLocationIdAndDate(
+                        WeatherContract.WeatherEntry.getLocationIdFromUri(uri),
+                        WeatherContract.WeatherEntry.getDateFromUri(uri),
+                        projection, sortOrder);
+                break;
+            }
+            // "location/#/weather"
+            case WEATHER_WITH_LOCATION_ID: {
+                retCursor = getWeatherByLocationId(
+                        WeatherContract.WeatherEntry.getLocationIdFromUri(uri), uri,
+                        projection, sortOrder);
+                break;
+            }
             // "weather"
             case WEATHER: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
@@ -213,14 +769,51 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "stats/*/*"
+            case STATS: {
+                retCursor = getStats(uri, projection, sortOrder);
+                break;
+            }
+            // "current/*"
+            case CURRENT_WITH_LOCATION: {
+                retCursor = getCurrentWeather(uri, projection, sortOrder);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        if (cacheKey != null && retCursor.getCount() <= QUERY_CACHE_MAX_ROWS) {
+            CursorSnapshot snapshot = CursorSnapshot.of(retCursor);
+            mQueryCache.put(cacheKey, cacheLocationId, snapshot, cacheGeneration);
+            retCursor = snapshot.newCursor();
+        }
+        retCursor.setNotificationUri(getContext().getContentResolver(),
+                getNotificationUri(match, uri));
         return retCursor;
     }
 
+    /*
+        Weather addressed by location id is observed under its location setting, which is what
+        changes are notified on.  Notifying location/#/weather would also notify the observers
+        of the location table above it, e.g. a loader of the location's coordinates, on every
+        sync.
+     */
+    private Uri getNotificationUri(int match, Uri uri) {
+        if (match != WEATHER_WITH_LOCATION_ID && match != WEATHER_WITH_LOCATION_ID_AND_DATE) {
+            return uri;
+        }
+        String locationSetting =
+                getLocationSetting(WeatherContract.WeatherEntry.getLocationIdFromUri(uri));
+        if (locationSetting == null) {
+            return WeatherContract.WeatherEntry.CONTENT_URI;
+        }
+        return match == WEATHER_WITH_LOCATION_ID_AND_DATE
+                ? WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting,
+                        WeatherContract.WeatherEntry.getDateFromUri(uri))
+                : WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting);
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
@@ -233,11 +826,30 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                assignClusteredId(values);
+                HashMap<Long, HashSet<Long>> changedDays = new HashMap<Long, HashSet<Long>>();
+                long _id;
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    if (_id != -1) {
+                        addChangedDay(changedDays,
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+                        refreshCurrentWeather(db, changedDays);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                // A WITHOUT ROWID table has no rowid to hand back, so use the key we assigned
+                if ( _id != -1 && mOpenHelper.usesClusteredLayout() )
+                    _id = values.getAsLong(WeatherContract.WeatherEntry._ID);
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                onWeatherChanged(changedDays);
                 break;
             }
             case LOCATION: {
@@ -246,12 +858,12 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                mNotifier.notifyChange(uri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -263,21 +875,52 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            case WEATHER: {
+                HashMap<Long, HashSet<Long>> changedDays = new HashMap<Long, HashSet<Long>>();
+                db.beginTransaction();
+                try {
+                    collectChangedDays(db, selection, selectionArgs, null, changedDays);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rowsDeleted > 0) {
+                        refreshCurrentWeather(db, changedDays);
+                        // Every sync deletes the days that went by, which is where the rows of
+                        // locations whose current day has ended are brought forward
+                        WeatherDbHelper.refreshStaleCurrentWeather(db, today());
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsDeleted != 0) {
+                    onWeatherChanged(changedDays);
+                }
                 break;
+            }
             case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                db.beginTransaction();
+                try {
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rowsDeleted != 0) {
+                        WeatherDbHelper.refreshCurrentWeather(db, WeatherDbHelper.ALL_LOCATIONS,
+                                today());
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                clearLocationIdCache();
+                mQueryCache.invalidateAll();
+                mCallCache.invalidateAll();
+                // Because a null deletes all rows
+                if (rowsDeleted != 0) {
+                    mNotifier.notifyChange(uri);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
         return rowsDeleted;
     }
 
@@ -289,6 +932,18 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    private void assignClusteredId(ContentValues values) {
+        // The clustered weather table doesn't generate _id values, derive one from its key
+        if (mOpenHelper.usesClusteredLayout()
+                && !values.containsKey(WeatherContract.WeatherEntry._ID)
+                && values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                && values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
+            values.put(WeatherContract.WeatherEntry._ID, WeatherDbHelper.clusteredWeatherId(
+                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)));
+        }
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -297,21 +952,39 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                HashMap<Long, HashSet<Long>> changedDays = new HashMap<Long, HashSet<Long>>();
+                db.beginTransaction();
+                try {
+                    collectChangedDays(db, selection, selectionArgs, values, changedDays);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0) {
+                        refreshCurrentWeather(db, changedDays);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsUpdated != 0) {
+                    onWeatherChanged(changedDays);
+                }
                 break;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                clearLocationIdCache();
+                mQueryCache.invalidateAll();
+                mCallCache.invalidateAll();
+                if (rowsUpdated != 0) {
+                    mNotifier.notifyChange(uri);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
         return rowsUpdated;
     }
 
@@ -323,25 +996,90 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                HashMap<Long, HashSet<Long>> changedDays = new HashMap<Long, HashSet<Long>>();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
+                        // A sync writes every day again, most of them as they already are
+                        if (isStored(db, value)) {
+                            returnCount++;
+                            continue;
+                        }
+                        assignClusteredId(value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
+                            addChangedDay(changedDays,
+                                    value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                                    value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
                         }
                     }
+                    // Today's row is part of the same transaction as the forecast it comes from
+                    refreshCurrentWeather(db, changedDays);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                onWeatherChanged(changedDays);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Serves {@link WeatherContract#METHOD_GET_TODAY} and {@link WeatherContract#METHOD_GET_RANGE}
+     * for {@link WeatherCalls}, from a cache that weather writes invalidate, and reports the hits
+     * and misses of the provider's caches for {@link WeatherContract#METHOD_GET_CACHE_STATS}.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_GET_TODAY.equals(method)) {
+            return getCachedCall(method, arg, 0);
+        } else if (WeatherContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putInt(WeatherContract.EXTRA_QUERY_CACHE_HITS, mQueryCache.hitCount());
+            stats.putInt(WeatherContract.EXTRA_QUERY_CACHE_MISSES, mQueryCache.missCount());
+            stats.putInt(WeatherContract.EXTRA_CALL_CACHE_HITS, mCallCache.hitCount());
+            stats.putInt(WeatherContract.EXTRA_CALL_CACHE_MISSES, mCallCache.missCount());
+            return stats;
+        } else if (WeatherContract.METHOD_GET_RANGE.equals(method)) {
+            if (extras == null || extras.getInt(WeatherContract.EXTRA_DAYS) <= 0) {
+                throw new IllegalArgumentException("Missing number of days for " + method);
+            }
+            return getCachedCall(method, arg, extras.getInt(WeatherContract.EXTRA_DAYS));
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private Bundle getCachedCall(String method, String locationSetting, int days) {
+        // Today is part of the key, so that results roll over at midnight
+        long locationId = getLocationId(locationSetting);
+        String key = method + "|" + today() + "|" + locationId + "|" + days;
+
+        Bundle result = mCallCache.get(key);
+        if (result == null) {
+            long generation = mCallCache.generation();
+            if (WeatherContract.METHOD_GET_TODAY.equals(method)) {
+                result = WeatherCalls.todayFromCursor(getCurrentWeather(
+                        WeatherContract.CurrentEntry.buildCurrentUri(locationSetting),
+                        WeatherProjections.Today.COLUMNS, null));
+            } else {
+                result = WeatherCalls.rangeFromCursor(getWeatherByLocationSetting(
+                        WeatherCalls.buildRangeUri(locationSetting, days),
+                        WeatherProjections.Range.COLUMNS, null));
+            }
+            // No weather yet is cached too, as an empty Bundle
+            if (result == null) {
+                result = Bundle.EMPTY;
+            }
+            mCallCache.put(key, locationId, result, generation);
+        }
+        // Cached Bundles are shared, callers in this process get their own copy, arrays included
+        return result.isEmpty() ? null : WeatherCalls.copyOf(result);
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
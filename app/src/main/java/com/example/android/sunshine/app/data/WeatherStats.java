@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds the SQL behind {@link StatsEntry}.  Grouping and aggregation are both done by SQLite,
+ * so a trend over a long history comes back as a handful of rows instead of every day of it.
+ */
+final class WeatherStats {
+
+    // Dates are stored as local midnights, in milliseconds
+    private static final String LOCAL_DATE = WeatherEntry.TABLE_NAME + "." +
+            WeatherEntry.COLUMN_DATE + " / 1000, 'unixepoch', 'localtime'";
+
+    // ISO weeks start on Monday and belong to the year their Thursday is in
+    private static final String ISO_WEEK_THURSDAY = LOCAL_DATE + ", '-3 days', 'weekday 4'";
+
+    // Moving a date one month forward puts December into the first season of the next year
+    private static final String SEASON_MONTH = LOCAL_DATE + ", 'start of month', '+1 month'";
+
+    private static final String DAILY_MEAN_TEMP = "(" + WeatherEntry.COLUMN_MIN_TEMP + " + " +
+            WeatherEntry.COLUMN_MAX_TEMP + ") / 2";
+
+    private WeatherStats() {
+    }
+
+    /**
+     * Returns the SQL expression of the period a weather row belongs to, or null if the period
+     * is not one of the StatsEntry periods.
+     */
+    static String periodExpression(String period) {
+        if (StatsEntry.PERIOD_WEEK.equals(period)) {
+            return "CAST(strftime('%Y', " + ISO_WEEK_THURSDAY + ") AS INTEGER) * 100 + " +
+                    "(CAST(strftime('%j', " + ISO_WEEK_THURSDAY + ") AS INTEGER) - 1) / 7 + 1";
+        } else if (StatsEntry.PERIOD_MONTH.equals(period)) {
+            return "CAST(strftime('%Y', " + LOCAL_DATE + ") AS INTEGER) * 100 + " +
+                    "CAST(strftime('%m', " + LOCAL_DATE + ") AS INTEGER)";
+        } else if (StatsEntry.PERIOD_SEASON.equals(period)) {
+            return "CAST(strftime('%Y', " + SEASON_MONTH + ") AS INTEGER) * 10 + " +
+                    "(CAST(strftime('%m', " + SEASON_MONTH + ") AS INTEGER) - 1) / 3";
+        }
+        return null;
+    }
+
+    // Every StatsEntry column and its aggregate, in the order of a null projection
+    private static Map<String, String> columnExpressions(String periodExpression) {
+        Map<String, String> columns = new LinkedHashMap<String, String>();
+        columns.put(StatsEntry.COLUMN_PERIOD, periodExpression);
+        columns.put(StatsEntry.COLUMN_START_DATE, "MIN(" + WeatherEntry.COLUMN_DATE + ")");
+        columns.put(StatsEntry.COLUMN_END_DATE, "MAX(" + WeatherEntry.COLUMN_DATE + ")");
+        columns.put(StatsEntry.COLUMN_DAY_COUNT, "COUNT(*)");
+        columns.put(StatsEntry.COLUMN_MIN_TEMP, "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + ")");
+        columns.put(StatsEntry.COLUMN_MAX_TEMP, "MAX(" + WeatherEntry.COLUMN_MAX_TEMP + ")");
+        columns.put(StatsEntry.COLUMN_AVG_TEMP, "AVG(" + DAILY_MEAN_TEMP + ")");
+        columns.put(StatsEntry.COLUMN_MIN_HUMIDITY, "MIN(" + WeatherEntry.COLUMN_HUMIDITY + ")");
+        columns.put(StatsEntry.COLUMN_MAX_HUMIDITY, "MAX(" + WeatherEntry.COLUMN_HUMIDITY + ")");
+        columns.put(StatsEntry.COLUMN_AVG_HUMIDITY, "AVG(" + WeatherEntry.COLUMN_HUMIDITY + ")");
+        columns.put(StatsEntry.COLUMN_MIN_WIND_SPEED, "MIN(" + WeatherEntry.COLUMN_WIND_SPEED + ")");
+        columns.put(StatsEntry.COLUMN_MAX_WIND_SPEED, "MAX(" + WeatherEntry.COLUMN_WIND_SPEED + ")");
+        columns.put(StatsEntry.COLUMN_AVG_WIND_SPEED, "AVG(" + WeatherEntry.COLUMN_WIND_SPEED + ")");
+        return columns;
+    }
+
+    /**
+     * Builds the statistics query for the weather rows matching the selection.  Rows come back in
+     * chronological order unless a sort order is given.
+     */
+    static String buildQuery(String period, String[] projection, String selection,
+                             String sortOrder) {
+        String periodExpression = periodExpression(period);
+        if (periodExpression == null) {
+            throw new UnsupportedOperationException("Unknown stats period: " + period);
+        }
+        Map<String, String> columns = columnExpressions(periodExpression);
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (projection == null) {
+            projection = columns.keySet().toArray(new String[columns.size()]);
+        }
+        for (int i = 0; i < projection.length; i++) {
+            String expression = columns.get(projection[i]);
+            if (expression == null) {
+                throw new IllegalArgumentException("Unknown stats column: " + projection[i]);
+            }
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(expression).append(" AS ").append(projection[i]);
+        }
+        sql.append(" FROM ").append(WeatherEntry.TABLE_NAME)
+                .append(" WHERE ").append(selection)
+                .append(" GROUP BY ").append(periodExpression)
+                .append(" ORDER BY ").append(sortOrder != null ? sortOrder :
+                        "MIN(" + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ") ASC");
+        return sql.toString();
+    }
+}
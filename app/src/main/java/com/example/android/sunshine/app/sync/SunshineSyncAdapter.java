@@ -30,17 +30,23 @@ import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtPackManager;
 import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.ForecastSnapshotFile;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherIconAtlas;
+import com.example.android.sunshine.app.data.WeatherCalls;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProjections;
+import com.example.android.sunshine.app.data.WeatherProjections.Today;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
@@ -54,7 +60,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -79,19 +84,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -185,7 +177,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
 
             if (buffer.length() == 0) {
                 // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                setLocationStatus(locationQuery, LOCATION_STATUS_SERVER_DOWN, "Empty response");
                 return;
             }
             forecastJsonStr = buffer.toString();
@@ -194,11 +186,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            setLocationStatus(locationQuery, LOCATION_STATUS_SERVER_DOWN, e.toString());
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            setLocationStatus(locationQuery, LOCATION_STATUS_SERVER_INVALID, e.toString());
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -211,6 +203,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                 }
             }
         }
+
+        // After the weather, which matters more, and only once in a while
+        ArtPackManager.prefetch(getContext());
         return;
     }
 
@@ -270,10 +265,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                     case HttpURLConnection.HTTP_OK:
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                        setLocationStatus(locationSetting, LOCATION_STATUS_INVALID,
+                                "Error code " + errorCode);
                         return;
                     default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                        setLocationStatus(locationSetting, LOCATION_STATUS_SERVER_DOWN,
+                                "Error code " + errorCode);
                         return;
                 }
             }
@@ -375,6 +372,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
 
+                // Lets the next cold start show this forecast before the database is open
+                ForecastSnapshotFile.write(getContext(), locationSetting);
+
                 updateWidgets();
                 updateMuzei();
                 notifyWeather();
@@ -382,12 +382,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
 
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            setLocationStatus(locationSetting, LOCATION_STATUS_OK, null);
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            setLocationStatus(locationSetting, LOCATION_STATUS_SERVER_INVALID, e.toString());
         }
     }
 
@@ -412,13 +412,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-        if ( displayNotifications ) {
+        if ( SunshineSettings.get(context).notificationsEnabled ) {
 
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
 
@@ -426,16 +422,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                // we only need a few values, so ask our contentProvider for just those
+                Bundle today = WeatherCalls.getToday(context.getContentResolver(), locationQuery);
 
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null) {
+                    int weatherId = Today.getWeatherId(today);
+                    double high = Today.getMaxTemp(today);
+                    double low = Today.getMinTemp(today);
+                    String desc = Today.getShortDesc(today);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -511,7 +505,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
@@ -531,14 +524,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
         // First, check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherProjections.LocationId.COLUMNS,
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
 
         if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
+            locationId = WeatherProjections.LocationId.getId(locationCursor);
         } else {
             // Now that the content provider is set up, inserting rows of data is pretty simple.
             // First create a ContentValues object to hold the data you want to insert.
@@ -658,16 +650,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
     }
 
     /**
-     * Sets the location status into shared preference.  This function should not be called from
-     * the UI thread because it uses commit to write to the shared preferences.
-     * @param c Context to get the PreferenceManager from.
+     * Records the outcome of the sync of a location in the SyncStatusStore, which writes it to
+     * disk later on a thread of its own.
+     * @param locationSetting The location that was synced
      * @param locationStatus The IntDef value to set
+     * @param errorDetail What went wrong, or null
      */
-    static private void setLocationStatus(Context c, @LocationStatus int locationStatus){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
-        spe.commit();
+    private void setLocationStatus(String locationSetting, @LocationStatus int locationStatus,
+                                   String errorDetail) {
+        SyncStatusStore.get(getContext()).setStatus(locationSetting, locationStatus, errorDetail);
     }
 
     private void setUpGoogleApiClient() {
@@ -681,26 +672,24 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
     private void sendWeatherToWearable() {
         String locationQuery = Utility.getPreferredLocation(getContext());
 
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        // reusing today's weather from the notification here but choosing to ignore the
+        // description value, ie, we don't place it within the DataMap for syncing later
+        Bundle today = WeatherCalls.getToday(getContext().getContentResolver(), locationQuery);
 
-        // reusing Notify Weather Projection here but choosing to ignore the description value pulled
-        // ie, we don't place it within the DataMap for syncing later
-        Cursor cursor = getContext().getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+        if(today != null) {
+            //Today's weather and temperatures from mobile
+            int weatherId = Today.getWeatherId(today);
+            double high = Today.getMaxTemp(today);
+            double low = Today.getMinTemp(today);
 
-        if(cursor.moveToFirst()) {
-            //We are the position 0, defaulted to today's weather and temperatures from mobile
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-
-            int artIcon = Utility.getArtResourceForWeatherCondition(weatherId);
-            Bitmap bitmap = BitmapFactory.decodeResource(getContext().getResources(), artIcon);
-            Asset toDataMapAsset = toAsset (bitmap);
+            // The watch face draws the art from its own copy of the art atlas
+            int artCell = WeatherIconAtlas.getArtCell(
+                    Utility.getArtResourceForWeatherCondition(weatherId));
 
             PutDataMapRequest sendRequest = PutDataMapRequest.create(getContext().getString(R.string.data_path));
             sendRequest.getDataMap().putString(getContext().getString(R.string.high_key), Utility.formatTemperature(getContext(), high));
             sendRequest.getDataMap().putString(getContext().getString(R.string.low_key), Utility.formatTemperature(getContext(), low));
-            sendRequest.getDataMap().putAsset(getContext().getString(R.string.asset_key), toDataMapAsset);
+            sendRequest.getDataMap().putInt(getContext().getString(R.string.art_cell_key), artCell);
             //The following is an extra item that ensures that dataChanged on the watch side always gets called
             sendRequest.getDataMap().putLong(getContext().getString(R.string.time_key), System.currentTimeMillis());
 
@@ -722,30 +711,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                             }
                         }
                     });
-
-            cursor.close();
         }
     }
 
 
 
-    private static Asset toAsset(Bitmap bitmap) {
-        ByteArrayOutputStream byteStream = null;
-        try {
-            byteStream = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 10, byteStream);
-            return Asset.createFromBytes(byteStream.toByteArray());
-        } finally {
-            if (null != byteStream) {
-                try {
-                    byteStream.close();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
-        }
-    }
-
     //GoogleApiClient.ConnectionCallbacks required calls
     @Override
     public void onConnected(Bundle connectionHint) {
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the outcome of the last sync of each location in memory.  Changes are sent to the
+ * observers on the main thread, and written to disk in batches on a thread of their own, so
+ * the sync adapter never waits for the disk to record a status.
+ *
+ * The statuses on disk are read on that thread too, as soon as the store is first used, which
+ * is usually on the main thread.  Until they have been read every location is unknown, and the
+ * observers are then told about the ones that turn out to have another status.
+ */
+public final class SyncStatusStore {
+
+    /**
+     * The sync status of one location.
+     */
+    public static final class Status {
+        public final String locationSetting;
+        @SunshineSyncAdapter.LocationStatus
+        public final int code;
+        // 0 until the location has been synced, or synced successfully
+        public final long lastAttemptMillis;
+        public final long lastSuccessMillis;
+        // What went wrong, for the log and debugging, null when nothing did
+        public final String errorDetail;
+
+        Status(String locationSetting, @SunshineSyncAdapter.LocationStatus int code,
+               long lastAttemptMillis, long lastSuccessMillis, String errorDetail) {
+            this.locationSetting = locationSetting;
+            this.code = code;
+            this.lastAttemptMillis = lastAttemptMillis;
+            this.lastSuccessMillis = lastSuccessMillis;
+            this.errorDetail = errorDetail;
+        }
+    }
+
+    public interface Observer {
+        /**
+         * Called on the main thread when the status of a location changes.
+         */
+        void onSyncStatusChanged(Status status);
+    }
+
+    static final String PREFS_NAME = "sync_status";
+    // Status changes come a few at a time at the end of a sync
+    static final long PERSIST_DELAY_MS = 1000;
+
+    private static final String KEY_CODE = "code/";
+    private static final String KEY_LAST_ATTEMPT = "last_attempt/";
+    private static final String KEY_LAST_SUCCESS = "last_success/";
+    private static final String KEY_ERROR_DETAIL = "error_detail/";
+
+    private static SyncStatusStore sInstance;
+
+    private final Context mContext;
+    // Only used on the writer thread
+    private SharedPreferences mPrefs;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Handler mPersistHandler;
+    private final Map<String, Status> mStatuses = new HashMap<String, Status>();
+    private final LinkedHashSet<String> mDirty = new LinkedHashSet<String>();
+    private final List<Observer> mObservers = new ArrayList<Observer>();
+    private boolean mPersistScheduled;
+
+    private final Runnable mPersist = new Runnable() {
+        @Override
+        public void run() {
+            persist();
+        }
+    };
+
+    private SyncStatusStore(Context context) {
+        mContext = context;
+        HandlerThread thread = new HandlerThread("SyncStatusWriter",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mPersistHandler = new Handler(thread.getLooper());
+        // Runs before any write, which is posted after it
+        mPersistHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public static synchronized SyncStatusStore get(Context context) {
+        if (null == sInstance) {
+            sInstance = new SyncStatusStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private void load() {
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        ArrayList<Status> loaded = new ArrayList<Status>();
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(KEY_CODE) || !(entry.getValue() instanceof Integer)) {
+                continue;
+            }
+            String locationSetting = key.substring(KEY_CODE.length());
+            @SunshineSyncAdapter.LocationStatus int code = (Integer) entry.getValue();
+            loaded.add(new Status(locationSetting, code,
+                    mPrefs.getLong(KEY_LAST_ATTEMPT + locationSetting, 0),
+                    mPrefs.getLong(KEY_LAST_SUCCESS + locationSetting, 0),
+                    mPrefs.getString(KEY_ERROR_DETAIL + locationSetting, null)));
+        }
+
+        for (Status status : loaded) {
+            Status current;
+            synchronized (this) {
+                current = mStatuses.get(status.locationSetting);
+                if (null != current) {
+                    // Set while the disk was read, which only left out the times of the past
+                    if (0 != current.lastAttemptMillis && 0 != current.lastSuccessMillis) {
+                        continue;
+                    }
+                    mStatuses.put(status.locationSetting, new Status(status.locationSetting,
+                            current.code,
+                            0 != current.lastAttemptMillis
+                                    ? current.lastAttemptMillis : status.lastAttemptMillis,
+                            0 != current.lastSuccessMillis
+                                    ? current.lastSuccessMillis : status.lastSuccessMillis,
+                            current.errorDetail));
+                    mDirty.add(status.locationSetting);
+                    continue;
+                }
+                mStatuses.put(status.locationSetting, status);
+            }
+            if (SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN != status.code) {
+                notifyObservers(status);
+            }
+        }
+    }
+
+    /**
+     * Returns the status of a location, unknown if it has never been synced.
+     */
+    public synchronized Status getStatus(String locationSetting) {
+        Status status = mStatuses.get(locationSetting);
+        if (null == status) {
+            status = new Status(locationSetting, SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                    0, 0, null);
+        }
+        return status;
+    }
+
+    /**
+     * Records the outcome of a sync of a location.  Doesn't touch the disk, so the sync thread
+     * may call it.
+     */
+    void setStatus(String locationSetting, @SunshineSyncAdapter.LocationStatus int code,
+                   String errorDetail) {
+        long now = System.currentTimeMillis();
+        Status previous = getStatus(locationSetting);
+        long lastSuccess = SunshineSyncAdapter.LOCATION_STATUS_OK == code
+                ? now : previous.lastSuccessMillis;
+        update(new Status(locationSetting, code, now, lastSuccess, errorDetail));
+    }
+
+    /**
+     * Forgets the outcome of the last sync of a location, e.g. before it is synced again
+     * because the user picked it.
+     */
+    public void reset(String locationSetting) {
+        Status previous = getStatus(locationSetting);
+        update(new Status(locationSetting, SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                previous.lastAttemptMillis, previous.lastSuccessMillis, null));
+    }
+
+    private void update(final Status status) {
+        synchronized (this) {
+            Status previous = mStatuses.put(status.locationSetting, status);
+            mDirty.add(status.locationSetting);
+            if (!mPersistScheduled) {
+                mPersistScheduled = true;
+                mPersistHandler.postDelayed(mPersist, PERSIST_DELAY_MS);
+            }
+            // Only a new code is of interest to the observers
+            if (null != previous && previous.code == status.code) {
+                return;
+            }
+        }
+        notifyObservers(status);
+    }
+
+    private void notifyObservers(final Status status) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<Observer> observers;
+                synchronized (SyncStatusStore.this) {
+                    observers = new ArrayList<Observer>(mObservers);
+                }
+                for (Observer observer : observers) {
+                    observer.onSyncStatusChanged(status);
+                }
+            }
+        });
+    }
+
+    public synchronized void registerObserver(Observer observer) {
+        if (!mObservers.contains(observer)) {
+            mObservers.add(observer);
+        }
+    }
+
+    public synchronized void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    /*
+        Writes the statuses that changed since the last time with one commit.  This runs on the
+        writer thread, where commit() doesn't hold anyone up and, unlike apply(), isn't waited
+        for when an activity or service stops.
+     */
+    private void persist() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        synchronized (this) {
+            for (String locationSetting : mDirty) {
+                Status status = mStatuses.get(locationSetting);
+                editor.putInt(KEY_CODE + locationSetting, status.code);
+                editor.putLong(KEY_LAST_ATTEMPT + locationSetting, status.lastAttemptMillis);
+                editor.putLong(KEY_LAST_SUCCESS + locationSetting, status.lastSuccessMillis);
+                if (null != status.errorDetail) {
+                    editor.putString(KEY_ERROR_DETAIL + locationSetting, status.errorDetail);
+                } else {
+                    editor.remove(KEY_ERROR_DETAIL + locationSetting);
+                }
+            }
+            mDirty.clear();
+            mPersistScheduled = false;
+        }
+        editor.commit();
+    }
+}
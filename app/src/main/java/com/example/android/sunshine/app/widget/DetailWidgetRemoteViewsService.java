@@ -1,6 +1,9 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
@@ -13,12 +16,14 @@ import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineGlideModule;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProjections.Forecast;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -26,34 +31,82 @@ import java.util.concurrent.ExecutionException;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+
+    /**
+     * Records why the widget's list is about to be refreshed, which
+     * AppWidgetManager#notifyAppWidgetViewDataChanged can't pass on.  Each factory compares the
+     * counts with the ones it last saw, so triggers arriving together before a refresh are all
+     * taken into account.
+     */
+    static final class RefreshReasons {
+        private static final AtomicInteger sDataChanges = new AtomicInteger();
+        private static final AtomicInteger sPresentationChanges = new AtomicInteger();
+
+        private int mQueriedDataChanges = -1;
+        private int mShownPresentationChanges = -1;
+
+        static void dataChanged() {
+            sDataChanges.incrementAndGet();
+        }
+
+        static void presentationChanged() {
+            sPresentationChanges.incrementAndGet();
+        }
+
+        /**
+         * Returns whether the refresh needs a new cursor.  Only a refresh for nothing but a
+         * presentation change keeps the cursor, the rows are then formatted again from it.
+         * Any other refresh, including the ones the widget host asks for by itself, queries.
+         */
+        boolean takeRequery(boolean hasCursor) {
+            int dataChanges = sDataChanges.get();
+            int presentationChanges = sPresentationChanges.get();
+            boolean presentationOnly = hasCursor && dataChanges == mQueriedDataChanges
+                    && presentationChanges != mShownPresentationChanges;
+            mShownPresentationChanges = presentationChanges;
+            // Read before the query, so that a change during it is queried again
+            mQueriedDataChanges = dataChanges;
+            return !presentationOnly;
+        }
+    }
+
+    /**
+     * Refreshes the lists of the detail widgets, with the reason for it.
+     *
+     * @param dataChanged whether the weather changed, or only the units or the art pack
+     */
+    static void notifyWidgets(Context context, boolean dataChanged) {
+        if (dataChanged) {
+            RefreshReasons.dataChanged();
+        } else {
+            RefreshReasons.presentationChanged();
+        }
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, DetailWidgetProvider.class));
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+    }
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private final RefreshReasons refreshReasons = new RefreshReasons();
+            // The art is decoded at the size of the row's icon, not at its own size
+            private int iconSize;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
             }
 
             @Override
             public void onDataSetChanged() {
+                // When only the units or the art pack changed, the rows are formatted again
+                // from the cursor that is already there
+                if (!refreshReasons.takeRequery(data != null)) {
+                    return;
+                }
                 if (data != null) {
                     data.close();
                 }
@@ -66,7 +119,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
                 data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
+                        Forecast.COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
@@ -79,6 +132,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                     data.close();
                     data = null;
                 }
+                SunshineGlideModule.logCacheStats();
             }
 
             @Override
@@ -94,7 +148,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 }
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                int weatherId = Forecast.getWeatherId(data);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
@@ -105,17 +159,18 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                                 .load(weatherArtResourceUrl)
                                 .asBitmap()
                                 .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
+                                .fitCenter()
+                                .into(iconSize, iconSize).get();
                     } catch (InterruptedException | ExecutionException e) {
                         Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
                     }
                 }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                String description = Forecast.getShortDesc(data);
+                long dateInMillis = Forecast.getDate(data);
                 String formattedDate = Utility.getFriendlyDayString(
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+                double maxTemp = Forecast.getMaxTemp(data);
+                double minTemp = Forecast.getMinTemp(data);
                 String formattedMaxTemperature =
                         Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
                 String formattedMinTemperature =
@@ -162,7 +217,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             @Override
             public long getItemId(int position) {
                 if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                    return Forecast.getId(data);
                 return position;
             }
 
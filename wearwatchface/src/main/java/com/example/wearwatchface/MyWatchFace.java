@@ -28,7 +28,6 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -44,7 +43,6 @@ import android.view.WindowInsets;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.CapabilityApi;
 import com.google.android.gms.wearable.CapabilityInfo;
 import com.google.android.gms.wearable.DataApi;
@@ -55,7 +53,6 @@ import com.google.android.gms.wearable.MessageApi;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -150,9 +147,14 @@ public class MyWatchFace extends CanvasWatchFaceService {
         float mDateMargin;
         float mTempMargin;
 
-        //asset and temperatures sent from the mobile app
-        Asset mIconAsset;
-        Bitmap mIconBitmap;
+        //art cell and temperatures sent from the mobile app, -1 until the art is known
+        int mArtCell = -1;
+        // The weather art of every condition, in the cells of one strip built with the app
+        Bitmap mArtAtlas;
+        // Generated from the list of the strip's drawables, see gradle/weather-atlas.gradle
+        int mArtCellCount;
+        final Rect mArtSrc = new Rect();
+        final Rect mArtDst = new Rect();
         String mHighTemp = "35";
         String mLowTemp = "22";
 
@@ -219,6 +221,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
             Resources resources = MyWatchFace.this.getResources();
             mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+            mArtAtlas = BitmapFactory.decodeResource(resources, R.drawable.weather_art_atlas);
+            mArtCellCount = resources.getInteger(R.integer.weather_art_atlas_cells);
 
 
             mBackgroundPaint = new Paint();
@@ -427,13 +431,16 @@ public class MyWatchFace extends CanvasWatchFaceService {
             float weather_X = mXOffset;
             float weather_Y = mYOffset + mDateTextPaint.measureText(amPmString);
 
-            if(mIconBitmap != null) {
-                Rect rect = new Rect(
-                        (int) weather_X, (int) weather_Y,
+            if(mArtCell >= 0 && mArtCell < mArtCellCount) {
+                // Scaled from another density the width may not divide evenly
+                float cellWidth = (float) mArtAtlas.getWidth() / mArtCellCount;
+                mArtSrc.set(Math.round(mArtCell * cellWidth), 0,
+                        Math.round((mArtCell + 1) * cellWidth), mArtAtlas.getHeight());
+                mArtDst.set((int) weather_X, (int) weather_Y,
                         (int) weather_X + (int) mRectDimen, (int) weather_Y + (int) mRectDimen);
-                canvas.drawBitmap(mIconBitmap, null, rect, null);
-                weather_X += (rect.width() + mTempMargin);
-                weather_Y += (rect.width() / 2);
+                canvas.drawBitmap(mArtAtlas, mArtSrc, mArtDst, null);
+                weather_X += (mArtDst.width() + mTempMargin);
+                weather_Y += (mArtDst.width() / 2);
 
                 canvas.drawText(mHighTemp, weather_X, weather_Y, mHighTempPaint);
                 weather_X += mHighTempPaint.measureText(mHighTemp) + mTempMargin;
@@ -513,10 +520,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
                     mHighTemp = dataMapItem.getDataMap().getString(MyWatchFace.this.getString(R.string.high_key));
                     mLowTemp = dataMapItem.getDataMap().getString(MyWatchFace.this.getString(R.string.low_key));
-                    mIconAsset = dataMapItem.getDataMap().getAsset(MyWatchFace.this.getString(R.string.asset_key));
-                    if(mIconAsset != null) {
-                        new loadBitmapAsyncTask().execute(mIconAsset);
-                    }
+                    mArtCell = dataMapItem.getDataMap().getInt(MyWatchFace.this.getString(R.string.art_cell_key), -1);
 
                     Log.v(LOG_TAG, "Received Data Item extraction complete?");
                 } else {
@@ -525,40 +529,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
         }
 
-        private class loadBitmapAsyncTask extends AsyncTask<Asset, Void, Bitmap> {
-
-
-            @Override
-            protected Bitmap doInBackground(Asset...params) {
-                if(params.length > 0) {
-                    Asset asset = params[0];
-
-                    InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                            mGoogleApiClient, asset).await().getInputStream();
-
-                    if (assetInputStream == null) {
-                        Log.w(LOG_TAG, "Requested an unknown Asset.");
-                        return null;
-                    }
-                    // decode the stream into a bitmap
-                    return BitmapFactory.decodeStream(assetInputStream);
-                } else {
-                    Log.e(LOG_TAG, "No valid Asset to decode/Asset must be non-null.");
-                    return null;
-                }
-            }
-
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-                if(bitmap != null) {
-                    //set the bitmap to the global variable to draw
-                    mIconBitmap = bitmap;
-                }
-            }
-
-        }
-
-
         //helper method for initializing formats
             public void initFormats() {
                 mDayofWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());